@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The plumbing shared by the publishers in the reactive pipeline. Each publisher accepts a single
+ * subscriber and is its own {@link Flow.Subscription}. All signals to the subscriber are sent from
+ * {@link #drain}, which runs on the given {@link Executor} and never on more than one thread at a
+ * time, so subclasses don't need to synchronize their own state.
+ */
+public abstract class AbstractPublisher<R> implements Flow.Publisher<R>, Flow.Subscription {
+
+  private volatile boolean cancelled = false;
+  private final AtomicLong demand = new AtomicLong();
+  private boolean done = false;
+  private final AtomicLong emitted = new AtomicLong();
+  private volatile Throwable error;
+  private final Executor executor;
+  private volatile Flow.Subscriber<? super R> subscriber;
+  private final AtomicInteger wip = new AtomicInteger();
+
+  protected AbstractPublisher(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    onCancel();
+  }
+
+  /**
+   * Signal {@link Flow.Subscriber#onComplete}. Called from {@link #drain} only.
+   */
+  protected void complete() {
+    if (!done) {
+      done = true;
+      subscriber.onComplete();
+    }
+  }
+
+  /**
+   * Send items to the subscriber for as long as {@link #wantsMore} says it wants them, and call
+   * {@link #complete} once there are no more. Called from the drain loop only.
+   */
+  protected abstract void drain();
+
+  private void drainLoop() {
+    for (int missed = 1; 0 != missed; missed = wip.addAndGet(-missed)) {
+      if (done || null == subscriber) {
+        continue;
+      }
+      if (cancelled) {
+        done = true;
+        continue;
+      }
+      Throwable error = this.error;
+      if (null != error) {
+        fail(error);
+        continue;
+      }
+      try {
+        drain();
+      } catch (RuntimeException | Error e) {
+        fail(e);
+      }
+    }
+  }
+
+  /**
+   * Send {@code item} to the subscriber. Called from {@link #drain} only, and only after
+   * {@link #wantsMore} has returned {@code true}.
+   */
+  protected void emit(R item) {
+    demand.decrementAndGet();
+    emitted.incrementAndGet();
+    subscriber.onNext(item);
+  }
+
+  /**
+   * The number of items sent to the subscriber so far.
+   */
+  public long emitted() {
+    return emitted.get();
+  }
+
+  private void fail(Throwable throwable) {
+    done = true;
+    onCancel();
+    subscriber.onError(throwable);
+  }
+
+  /**
+   * Arrange for {@code throwable} to be signalled to the subscriber from the drain loop.
+   */
+  protected void failLater(Throwable throwable) {
+    error = throwable;
+    schedule();
+  }
+
+  /**
+   * Called when the subscriber cancels or the stream fails, to release anything upstream.
+   */
+  protected void onCancel() {}
+
+  /**
+   * The number of items the subscriber has asked for that haven't been sent yet.
+   */
+  public long outstandingDemand() {
+    return demand.get();
+  }
+
+  @Override
+  public void request(long n) {
+    if (n <= 0) {
+      failLater(new IllegalArgumentException(
+          String.format("Requested %d items, but requests must be positive", n)));
+      return;
+    }
+    demand.getAndUpdate(current -> Long.MAX_VALUE - current < n ? Long.MAX_VALUE : current + n);
+    schedule();
+  }
+
+  /**
+   * Make sure the drain loop runs again, soon, on the executor.
+   */
+  protected void schedule() {
+    if (0 == wip.getAndIncrement()) {
+      executor.execute(this::drainLoop);
+    }
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super R> subscriber) {
+    if (null != this.subscriber) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+            @Override public void cancel() {}
+            @Override public void request(long n) {}
+          });
+      subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+      return;
+    }
+    this.subscriber = subscriber;
+    subscriber.onSubscribe(this);
+    schedule();
+  }
+
+  /**
+   * Whether the subscriber has asked for items that haven't been sent yet.
+   */
+  protected boolean wantsMore() {
+    return !cancelled && 0 < demand.get();
+  }
+}
@@ -19,20 +19,16 @@ package edu.berkeley.cs.amplab.calldiff;
 import static java.util.Spliterator.IMMUTABLE;
 import static java.util.Spliterator.NONNULL;
 
-import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
 import com.google.common.collect.AbstractIterator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.RandomAccess;
-import java.util.Set;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
-import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -48,84 +44,6 @@ import java.util.stream.StreamSupport;
  */
 public class BimonotonicAStarSearcher<X, Y, Z> {
 
-  private static class AStar<X, Y> {
-
-    static class Builder<X, Y> {
-
-      private Comparator<? super X> comparator;
-      private Function<? super X, ? extends Y> id;
-      private Function<? super X, ? extends Stream<? extends X>> neighbors;
-
-      AStar<X, Y> build() {
-        return new AStar<>(comparator, id, neighbors);
-      }
-
-      Builder<X, Y> setComparator(Comparator<? super X> comparator) {
-        this.comparator = comparator;
-        return this;
-      }
-
-      Builder<X, Y> setIdFunction(Function<? super X, ? extends Y> id) {
-        this.id = id;
-        return this;
-      }
-
-      Builder<X, Y> setNeighborsFunction(
-          Function<? super X, ? extends Stream<? extends X>> neighbors) {
-        this.neighbors = neighbors;
-        return this;
-      }
-    }
-
-    static <X, Y> Builder<X, Y> builder() {
-      return new Builder<>();
-    }
-
-    private final Comparator<? super X> comparator;
-    private final Function<? super X, ? extends Y> id;
-    private final Function<? super X, ? extends Stream<? extends X>> neighbors;
-
-    private AStar(
-        Comparator<? super X> comparator,
-        Function<? super X, ? extends Y> id,
-        Function<? super X, ? extends Stream<? extends X>> neighbors) {
-      this.comparator = comparator;
-      this.id = id;
-      this.neighbors = neighbors;
-    }
-
-    Stream<X> search(X initial) {
-      return StreamSupport.stream(
-          Spliterators.spliteratorUnknownSize(
-              new AbstractIterator<X>() {
-
-                private final Queue<X> queue = new PriorityQueue<>(1, comparator);
-                private final Set<Y> set = new HashSet<>();
-
-                {
-                  enqueue(initial);
-                }
-
-                @Override protected X computeNext() {
-                  X next = queue.poll();
-                  if (null != next) {
-                    neighbors.apply(next).forEach(this::enqueue);
-                    return next;
-                  }
-                  return endOfData();
-                }
-
-                private void enqueue(X x) {
-                  if (set.add(id.apply(x))) {
-                    queue.offer(x);
-                  }
-                }
-              },
-              IMMUTABLE | NONNULL),
-          false);
-    }
-  }
-
   public static class Builder<X, Y, Z> {
 
     private BiFunction<? super X, ? super Y, ? extends Z> biFunction;
@@ -149,37 +67,106 @@ public class BimonotonicAStarSearcher<X, Y, Z> {
     }
   }
 
-  private static class Pair {
-
-    private static final HashCodeAndEquals<Pair> HASH_CODE_AND_EQUALS = HashCodeAndEquals.create(
-        Pair.class,
-        Pair::i,
-        Pair::j);
-
-    private final int i, j;
+  /**
+   * A single search. The frontier is a binary heap of cells {@code (i, j)} of the Cartesian
+   * product, each packed into a {@code long} as {@code i << 32 | j}, with the value of each cell
+   * kept at the same index of a parallel array. The cells that have ever been put on the heap are
+   * marked in one {@link BitSet} per row. Expanding a cell therefore allocates nothing but the
+   * values of its neighbors. The heap is sifted exactly like {@link java.util.PriorityQueue}'s, so
+   * cells with equal values come out in the same order they always have.
+   */
+  private class Search extends AbstractIterator<Z> {
+
+    private long[] cells = new long[INITIAL_CAPACITY];
+    private final List<? extends X> lhs;
+    private final List<? extends Y> rhs;
+    private int size;
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private final List<BitSet> visited = new ArrayList<>();
+
+    Search(List<? extends X> lhs, List<? extends Y> rhs) {
+      this.lhs = lhs;
+      this.rhs = rhs;
+      enqueue(0, 0);
+    }
 
-    Pair(int i, int j) {
-      this.i = i;
-      this.j = j;
+    @SuppressWarnings("unchecked")
+    private int compare(Object lhs, Object rhs) {
+      return comparator.compare((Z) lhs, (Z) rhs);
     }
 
-    @Override public boolean equals(Object obj) {
-      return HASH_CODE_AND_EQUALS.equals(this, obj);
+    @Override protected Z computeNext() {
+      if (0 == size) {
+        return endOfData();
+      }
+      long cell = cells[0];
+      @SuppressWarnings("unchecked") Z value = (Z) values[0];
+      int last = --size;
+      long lastCell = cells[last];
+      Object lastValue = values[last];
+      values[last] = null;
+      if (0 != last) {
+        siftDown(0, lastCell, lastValue);
+      }
+      int i = (int) (cell >>> 32), j = (int) cell;
+      if (i + 1 < lhs.size()) {
+        enqueue(i + 1, j);
+      }
+      if (j + 1 < rhs.size()) {
+        enqueue(i, j + 1);
+      }
+      return value;
     }
 
-    @Override public int hashCode() {
-      return HASH_CODE_AND_EQUALS.hashCode(this);
+    private void enqueue(int i, int j) {
+      while (visited.size() <= i) {
+        visited.add(new BitSet());
+      }
+      BitSet row = visited.get(i);
+      if (!row.get(j)) {
+        row.set(j);
+        if (cells.length == size) {
+          cells = Arrays.copyOf(cells, 2 * size);
+          values = Arrays.copyOf(values, 2 * size);
+        }
+        siftUp(size++, (long) i << 32 | j, biFunction.apply(lhs.get(i), rhs.get(j)));
+      }
     }
 
-    int i() {
-      return i;
+    private void siftDown(int k, long cell, Object value) {
+      for (int half = size >>> 1; k < half;) {
+        int child = 2 * k + 1, right = child + 1;
+        if (right < size && 0 < compare(values[child], values[right])) {
+          child = right;
+        }
+        if (compare(value, values[child]) <= 0) {
+          break;
+        }
+        cells[k] = cells[child];
+        values[k] = values[child];
+        k = child;
+      }
+      cells[k] = cell;
+      values[k] = value;
     }
 
-    int j() {
-      return j;
+    private void siftUp(int k, long cell, Object value) {
+      while (0 < k) {
+        int parent = (k - 1) >>> 1;
+        if (0 <= compare(value, values[parent])) {
+          break;
+        }
+        cells[k] = cells[parent];
+        values[k] = values[parent];
+        k = parent;
+      }
+      cells[k] = cell;
+      values[k] = value;
     }
   }
 
+  private static final int INITIAL_CAPACITY = 16;
+
   public static <X, Y, Z> Builder<X, Y, Z> builder() {
     return new Builder<>();
   }
@@ -196,41 +183,10 @@ public class BimonotonicAStarSearcher<X, Y, Z> {
 
   public <L extends List<? extends X> & RandomAccess, R extends List<? extends Y> & RandomAccess>
       Stream<Z> search(L lhs, R rhs) {
-    int lhsSize = lhs.size(), rhsSize = rhs.size();
-    class PairWithValue {
-
-      private final Pair pair;
-      private final Supplier<Z> value;
-
-      PairWithValue(int i, int j) {
-        this.pair = new Pair(i, j);
-        this.value = Suppliers.memoize(
-            () -> biFunction.apply(lhs.get(pair.i()), rhs.get(pair.j())));
-      }
-
-      Stream<PairWithValue> neighbors() {
-        int i = pair.i(), nextI = i + 1, j = pair.j(), nextJ = j + 1;
-        return Stream.concat(
-            nextI < lhsSize ? Stream.of(new PairWithValue(nextI, j)) : Stream.empty(),
-            nextJ < rhsSize ? Stream.of(new PairWithValue(i, nextJ)) : Stream.empty());
-      }
-
-      Pair pair() {
-        return pair;
-      }
-
-      Z value() {
-        return value.get();
-      }
-    }
-    return 0 == lhsSize || 0 == rhsSize
+    return lhs.isEmpty() || rhs.isEmpty()
         ? Stream.empty()
-        : AStar.<PairWithValue, Pair>builder()
-            .setComparator(Comparator.comparing(PairWithValue::value, this.comparator))
-            .setIdFunction(PairWithValue::pair)
-            .setNeighborsFunction(PairWithValue::neighbors)
-            .build()
-            .search(new PairWithValue(0, 0))
-            .map(PairWithValue::value);
+        : StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(new Search(lhs, rhs), IMMUTABLE | NONNULL),
+            false);
   }
 }
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link CallScanner} decorator that runs the underlying scanner on its own thread, and hands
+ * the calls it produces to the consumer in batches through a bounded {@link RingBuffer}. Wrapping
+ * both the left hand side and the right hand side scanners lets the two inputs be parsed
+ * concurrently, while the bound keeps either producer from running arbitrarily far ahead of the
+ * comparison.
+ */
+public class BufferedCallScanner implements CallScanner {
+
+  private static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private static final List<Call> END_OF_DATA = Collections.emptyList();
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("calldiff-scanner-%d")
+      .build();
+
+  public static BufferedCallScanner create(CallScanner delegate) {
+    return create(delegate, RingBuffer.WaitStrategy.PARK);
+  }
+
+  public static BufferedCallScanner create(CallScanner delegate,
+      RingBuffer.WaitStrategy waitStrategy) {
+    return create(delegate, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, waitStrategy);
+  }
+
+  public static BufferedCallScanner create(CallScanner delegate, int capacity, int batchSize) {
+    return create(delegate, capacity, batchSize, RingBuffer.WaitStrategy.PARK);
+  }
+
+  public static BufferedCallScanner create(CallScanner delegate, int capacity, int batchSize,
+      RingBuffer.WaitStrategy waitStrategy) {
+    return new BufferedCallScanner(delegate, capacity, batchSize, waitStrategy);
+  }
+
+  private static void put(RingBuffer<List<Call>> buffer, List<Call> batch) {
+    try {
+      buffer.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw ExceptionWrapper.wrap(e);
+    }
+  }
+
+  private final int batchSize;
+  private final int capacity;
+  private final CallScanner delegate;
+  private final RingBuffer.WaitStrategy waitStrategy;
+
+  private BufferedCallScanner(CallScanner delegate, int capacity, int batchSize,
+      RingBuffer.WaitStrategy waitStrategy) {
+    this.delegate = delegate;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.waitStrategy = waitStrategy;
+  }
+
+  private Void produce(RingBuffer<List<Call>> buffer) throws IOException {
+    try {
+      return delegate.scan(calls -> {
+            List<Call> batch = new ArrayList<>(batchSize);
+            for (Iterator<Call> iterator = calls.iterator(); iterator.hasNext();) {
+              batch.add(iterator.next());
+              if (batchSize == batch.size()) {
+                put(buffer, batch);
+                batch = new ArrayList<>(batchSize);
+              }
+            }
+            if (!batch.isEmpty()) {
+              put(buffer, batch);
+            }
+            return null;
+          });
+    } finally {
+      if (!Thread.currentThread().isInterrupted()) {
+        put(buffer, END_OF_DATA);
+      }
+    }
+  }
+
+  @Override
+  public <X> X scan(Callback<? extends X> callback) throws IOException {
+    RingBuffer<List<Call>> buffer = RingBuffer.create(capacity, waitStrategy);
+    ExecutorService executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    try {
+      Future<Void> producer = executor.submit(() -> produce(buffer));
+      try {
+        return callback.scan(StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                new AbstractIterator<Call>() {
+
+                  private Iterator<Call> batch = Collections.emptyIterator();
+
+                  @Override protected Call computeNext() {
+                    while (!batch.hasNext()) {
+                      List<Call> next;
+                      try {
+                        next = buffer.take();
+                      } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw ExceptionWrapper.wrap(e);
+                      }
+                      if (END_OF_DATA == next) {
+                        ExceptionWrapper.getUnchecked(producer);
+                        return endOfData();
+                      }
+                      batch = next.iterator();
+                    }
+                    return batch.next();
+                  }
+                },
+                Spliterator.IMMUTABLE | Spliterator.NONNULL),
+            false));
+      } finally {
+        producer.cancel(true);
+      }
+    } catch (ExceptionWrapper e) {
+      Exception cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -16,19 +16,31 @@
  */
 package edu.berkeley.cs.amplab.calldiff;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
 import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A {@code CandidateCalls} object is a 5-tuple containing the following information:
@@ -58,40 +70,210 @@ public class CandidateCalls {
     return new CandidateCalls(contig, start, end, lhs, rhs);
   }
 
+  /**
+   * The pairs of non-overlapping subsets of the left hand and right hand calls in {@code window},
+   * largest first. This is a branch and bound search: a pair can only generate the same set of
+   * haplotypes if both of its sides have the same {@link #lengthDeltaBounds}, so the subsets are
+   * grouped by those bounds, and only the pairs within a group are searched. The searches of the
+   * groups are merged so that the pairs still come out largest first.
+   */
   public static Stream<CandidateCalls> createCandidates(Window window) {
-    return window.isTooLarge()
-        ? Stream.empty()
-        : BimonotonicAStarSearcher.<List<Call>, List<Call>, CandidateCalls>builder()
+    return createCandidates(window, WindowBudget.UNLIMITED.start());
+  }
+
+  /**
+   * Like {@link #createCandidates(Window)}, checking the time limit of {@code tracker} for each
+   * subset as the subsets are enumerated. All the subsets of both sides are built before the first
+   * pair comes out, so this is what stops a window that goes over the time limit while they are.
+   */
+  static Stream<CandidateCalls> createCandidates(Window window, WindowBudget.Tracker tracker) {
+    Comparator<CandidateCalls> comparator = Comparator.comparing(CandidateCalls::size).reversed();
+    BimonotonicAStarSearcher<List<Call>, List<Call>, CandidateCalls> searcher =
+        BimonotonicAStarSearcher.<List<Call>, List<Call>, CandidateCalls>builder()
             .setBiFunction(
                 (lhs, rhs) -> create(window.contig(), window.start(), window.end(), lhs, rhs))
-            .setComparator(Comparator.comparing(CandidateCalls::size).reversed())
-            .build()
-            .search(nonOverlappingSubsets(window.lhs()), nonOverlappingSubsets(window.rhs()));
+            .setComparator(comparator)
+            .build();
+    Map<List<Integer>, ArrayList<List<Call>>>
+        lhs = groupByLengthDeltaBounds(nonOverlappingSubsets(window.lhs(), tracker)),
+        rhs = groupByLengthDeltaBounds(nonOverlappingSubsets(window.rhs(), tracker));
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            Iterators.mergeSorted(
+                lhs.entrySet()
+                    .stream()
+                    .filter(entry -> rhs.containsKey(entry.getKey()))
+                    .map(entry -> searcher.search(entry.getValue(), rhs.get(entry.getKey()))
+                        .iterator())
+                    .collect(Collectors.toList()),
+                comparator),
+            Spliterator.IMMUTABLE | Spliterator.NONNULL),
+        false);
+  }
+
+  /**
+   * Call {@code action} with every subset of {@code calls} in which no two calls overlap, together
+   * with the state that {@code extend} builds for it. The subsets are visited in the order that
+   * {@link Sets#powerSet} would produce them for the calls sorted by position, and the calls
+   * within each subset are sorted by position. The state of the empty subset is {@code empty}, and
+   * the state of any other subset is built by extending the state of the subset without its first
+   * call, so each state is derived from a previous one with a single call.
+   */
+  static <S> void forEachNonOverlappingSubset(List<? extends Call> calls, S empty,
+      BiFunction<? super S, ? super Call, ? extends S> extend,
+      BiConsumer<? super List<Call>, ? super S> action) {
+    List<Call> distinct = new ArrayList<>(Sets.newLinkedHashSet(calls));
+    Collections.sort(distinct, Comparator.comparing(Call::position));
+    forEachNonOverlappingSubset(
+        distinct, distinct.size(), new ArrayDeque<>(), empty, extend, action);
+  }
+
+  /**
+   * Visit every subset of the first {@code count} elements of {@code calls} that can be put in
+   * front of {@code chosen} without introducing an overlap. {@code calls} is sorted by position,
+   * so {@code chosen} is too, and a call can only overlap the chosen calls that start before it
+   * ends, which is usually just the first of them. A call is only included if it overlaps none of
+   * them, so the subsets that would be rejected are never built. The calls are visited from last
+   * to first, excluding each one before including it, which yields the subsets in the same order
+   * as {@link Sets#powerSet} does.
+   */
+  private static <S> void forEachNonOverlappingSubset(List<Call> calls, int count,
+      ArrayDeque<Call> chosen, S state, BiFunction<? super S, ? super Call, ? extends S> extend,
+      BiConsumer<? super List<Call>, ? super S> action) {
+    if (0 == count) {
+      action.accept(new ArrayList<>(chosen), state);
+    } else {
+      Call call = calls.get(count - 1);
+      forEachNonOverlappingSubset(calls, count - 1, chosen, state, extend, action);
+      if (!overlapsAny(call, chosen)) {
+        chosen.addFirst(call);
+        forEachNonOverlappingSubset(
+            calls, count - 1, chosen, extend.apply(state, call), extend, action);
+        chosen.removeFirst();
+      }
+    }
+  }
+
+  private static Map<List<Integer>, ArrayList<List<Call>>>
+      groupByLengthDeltaBounds(List<List<Call>> subsets) {
+    return subsets.stream().collect(Collectors.groupingBy(
+        CandidateCalls::lengthDeltaBounds,
+        LinkedHashMap::new,
+        Collectors.toCollection(ArrayList::new)));
+  }
+
+  private static int lengthDelta(Call call, int allele) {
+    List<Integer> genotype = call.genotype();
+    List<String> alternates = call.alternates();
+    int index = allele < genotype.size() ? genotype.get(allele) : 0;
+    return 0 < index && index <= alternates.size()
+        ? alternates.get(index - 1).length() - call.reference().length()
+        : 0;
   }
 
-  private static <L extends List<? extends Call> & RandomAccess> ArrayList<List<Call>>
+  /**
+   * The least and the greatest amount by which the haplotypes that {@code calls} generate differ in
+   * length from the reference. {@link HaplotypeGenerator} picks one allele index for each phaseset
+   * (or unphased call) independently of the others, so these are the sums over the phasesets of the
+   * least and greatest change in length that any one allele index makes.
+   */
+  static List<Integer> lengthDeltaBounds(List<Call> calls) {
+    int min = 0, max = 0;
+    for (List<Call> phaseset : HaplotypeGenerator.partitionByPhaseset(calls)) {
+      int phasesetMin = Integer.MAX_VALUE, phasesetMax = Integer.MIN_VALUE;
+      for (int allele = 0; allele < phaseset.get(0).genotype().size(); ++allele) {
+        int delta = 0;
+        for (Call call : phaseset) {
+          delta += lengthDelta(call, allele);
+        }
+        phasesetMin = Math.min(phasesetMin, delta);
+        phasesetMax = Math.max(phasesetMax, delta);
+      }
+      if (phasesetMin <= phasesetMax) {
+        min += phasesetMin;
+        max += phasesetMax;
+      }
+    }
+    return Arrays.asList(min, max);
+  }
+
+  /**
+   * The distinct amounts by which the haplotypes that {@code calls} generate differ in length from
+   * the reference. Each phaseset (or unphased call) independently adds the change in length of
+   * one of its allele indices, so these are all the sums of one such change per phaseset. The
+   * haplotypes are compared as a set, so two sets of calls that generate the same haplotypes have
+   * the same set of lengths, though not necessarily the same number of haplotypes of each length.
+   * Empty if a genotype refers to an allele that doesn't exist, in which case nothing can be told.
+   */
+  static Optional<Set<Integer>> lengthDeltas(List<Call> calls) {
+    Set<Integer> deltas = Collections.singleton(0);
+    for (List<Call> phaseset : HaplotypeGenerator.partitionByPhaseset(calls)) {
+      Set<Integer> phasesetDeltas = new HashSet<>();
+      for (int allele = 0; allele < phaseset.get(0).genotype().size(); ++allele) {
+        int delta = 0;
+        for (Call call : phaseset) {
+          List<Integer> genotype = call.genotype();
+          if (genotype.size() <= allele || genotype.get(allele) < 0
+              || call.alternates().size() < genotype.get(allele)) {
+            return Optional.empty();
+          }
+          delta += lengthDelta(call, allele);
+        }
+        phasesetDeltas.add(delta);
+      }
+      Set<Integer> sums = new TreeSet<>();
+      for (int delta : deltas) {
+        for (int phasesetDelta : phasesetDeltas) {
+          sums.add(delta + phasesetDelta);
+        }
+      }
+      deltas = sums;
+    }
+    return Optional.of(deltas);
+  }
+
+  /**
+   * All the subsets of {@code calls} in which no two calls overlap, largest first. Within each
+   * size, the subsets come in the order that {@link Sets#powerSet} would produce them for the calls
+   * sorted by position, and the calls within each subset are sorted by position.
+   */
+  static <L extends List<? extends Call> & RandomAccess> ArrayList<List<Call>>
       nonOverlappingSubsets(L calls) {
-    ArrayList<List<Call>> list = Sets.powerSet(Sets.newLinkedHashSet(calls))
-        .stream()
-        .filter(
-            set -> {
-              for (Call lhs : set) {
-                for (Call rhs : set) {
-                  if (lhs != rhs && lhs.overlaps(rhs)) {
-                    return false;
-                  }
-                }
-              }
-              return true;
-            })
-        .map(Lists::newArrayList)
-        .collect(Collectors.toCollection(ArrayList::new));
+    return nonOverlappingSubsets(calls, WindowBudget.UNLIMITED.start());
+  }
+
+  private static ArrayList<List<Call>> nonOverlappingSubsets(
+      List<? extends Call> calls, WindowBudget.Tracker tracker) {
+    ArrayList<List<Call>> list = new ArrayList<>();
+    CandidateCalls.<Void>forEachNonOverlappingSubset(
+        calls,
+        null,
+        (state, call) -> null,
+        (subset, state) -> {
+          tracker.checkTime();
+          list.add(subset);
+        });
     Collections.sort(
         list,
         Comparator.comparing((Function<Collection<?>, Integer>) Collection::size).reversed());
     return list;
   }
 
+  /**
+   * Whether {@code call} overlaps any of {@code calls}, which start no earlier than it does and are
+   * sorted by position.
+   */
+  private static boolean overlapsAny(Call call, Iterable<Call> calls) {
+    for (Call other : calls) {
+      if (call.end() <= other.position()) {
+        return false;
+      } else if (call.overlaps(other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private final String contig;
   private final List<Call> lhs, rhs;
   private final int start, end;
@@ -118,11 +300,19 @@ public class CandidateCalls {
   }
 
   public boolean generatesSameSetOfHaplotypes(FastaReader.FastaFile reference) {
-    String contig = contig();
-    int start = start(), end = end();
-    return Objects.equals(
-        HaplotypeGenerator.generateHaplotypes(reference, contig, lhs(), start, end),
-        HaplotypeGenerator.generateHaplotypes(reference, contig, rhs(), start, end));
+    return generatesSameSetOfHaplotypes(reference, HaplotypeEngine.ENUMERATE);
+  }
+
+  /**
+   * Whether the left hand and right hand calls generate the same set of haplotypes. The pairs
+   * whose haplotypes can't have the same set of lengths are rejected from the {@link #lengthDeltas}
+   * of the calls alone, before {@code engine} reads the reference or builds any haplotypes.
+   */
+  public boolean generatesSameSetOfHaplotypes(FastaReader.FastaFile reference,
+      HaplotypeEngine engine) {
+    Optional<Set<Integer>> lhsDeltas = lengthDeltas(lhs()), rhsDeltas = lengthDeltas(rhs());
+    return (!lhsDeltas.isPresent() || !rhsDeltas.isPresent() || lhsDeltas.equals(rhsDeltas))
+        && engine.generateSameSetOfHaplotypes(reference, contig(), lhs(), rhs(), start(), end());
   }
 
   @Override
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collector;
+
+/**
+ * A {@link Flow.Subscriber} that feeds the items it receives into a {@link Collector}, keeping at
+ * most {@code capacity} of them requested at a time. The items are collected as they arrive, so
+ * none of them wait in a buffer here. The collected result is available from {@link #result} once
+ * the publisher completes.
+ */
+public class CollectorSubscriber<T, A, R> implements Flow.Subscriber<T> {
+
+  public static <T, A, R> CollectorSubscriber<T, A, R>
+      create(Collector<? super T, A, ? extends R> collector, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+          String.format("capacity must be positive, was %d", capacity));
+    }
+    return new CollectorSubscriber<>(collector, capacity);
+  }
+
+  private final int capacity;
+  private final AtomicLong collected = new AtomicLong();
+  private final Collector<? super T, A, ? extends R> collector;
+  private final A container;
+  private final CompletableFuture<R> result = new CompletableFuture<>();
+  private Flow.Subscription subscription;
+
+  private CollectorSubscriber(Collector<? super T, A, ? extends R> collector, int capacity) {
+    this.collector = collector;
+    this.capacity = capacity;
+    this.container = collector.supplier().get();
+  }
+
+  /**
+   * The number of items collected so far.
+   */
+  public long collected() {
+    return collected.get();
+  }
+
+  @Override
+  public void onComplete() {
+    try {
+      result.complete(collector.finisher().apply(container));
+    } catch (RuntimeException | Error e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    result.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onNext(T item) {
+    if (result.isDone()) {
+      return;
+    }
+    try {
+      collector.accumulator().accept(container, item);
+      collected.incrementAndGet();
+    } catch (RuntimeException | Error e) {
+      subscription.cancel();
+      result.completeExceptionally(e);
+      return;
+    }
+    subscription.request(1);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (null != this.subscription) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(capacity);
+  }
+
+  /**
+   * Completes with the collected result when the publisher completes, or exceptionally when it
+   * fails.
+   */
+  public CompletableFuture<R> result() {
+    return result;
+  }
+}
@@ -31,40 +31,70 @@ public class CommandLine {
   public static class Builder {
 
     private String apiKey;
+    private WindowEvaluator.CandidateSearch candidateSearch;
+    private Integer candidateThreads;
     private boolean noLocalServer;
+    private boolean normalize;
     private String clientSecretsFile;
+    private ExecutionMode executionMode;
+    private HaplotypeEngine haplotypeEngine;
+    private boolean hashJoin;
     private String lhsCallsetId;
     private String lhsSampleId;
     private String lhsVcf;
+    private Long maxCandidates;
+    private Long maxHaplotypes;
+    private Long maxWindowMillis;
+    private Integer maxWindowSize;
     private String p12File;
     private boolean presorted;
     private String referenceFai;
     private String referenceFasta;
+    private String repeatIndex;
     private String rhsCallsetId;
     private String rhsSampleId;
     private String rhsVcf;
     private String rootUrl;
     private String serviceAccountId;
+    private boolean splitExactMatches;
+    private Integer threads;
     private Integer timeout;
+    private RingBuffer.WaitStrategy waitStrategy;
+    private WindowSpan windowSpan;
 
     public CommandLine build() {
       return new CommandLine(
           apiKey,
+          candidateSearch,
+          candidateThreads,
           noLocalServer,
+          normalize,
           clientSecretsFile,
+          executionMode,
+          haplotypeEngine,
+          hashJoin,
           lhsCallsetId,
           lhsSampleId,
           lhsVcf,
+          maxCandidates,
+          maxHaplotypes,
+          maxWindowMillis,
+          maxWindowSize,
           p12File,
           presorted,
           referenceFai,
           referenceFasta,
+          repeatIndex,
           rhsCallsetId,
           rhsSampleId,
           rhsVcf,
           rootUrl,
           serviceAccountId,
-          timeout);
+          splitExactMatches,
+          threads,
+          timeout,
+          waitStrategy,
+          windowSpan);
     }
 
     public Builder setApiKey(String apiKey) {
@@ -72,16 +102,46 @@ public class CommandLine {
       return this;
     }
 
+    public Builder setCandidateSearch(WindowEvaluator.CandidateSearch candidateSearch) {
+      this.candidateSearch = candidateSearch;
+      return this;
+    }
+
+    public Builder setCandidateThreads(Integer candidateThreads) {
+      this.candidateThreads = candidateThreads;
+      return this;
+    }
+
     public Builder setNoLocalServer(boolean noLocalServer) {
       this.noLocalServer = noLocalServer;
       return this;
     }
 
+    public Builder setNormalize(boolean normalize) {
+      this.normalize = normalize;
+      return this;
+    }
+
     public Builder setClientSecretsFile(String clientSecretsFile) {
       this.clientSecretsFile = clientSecretsFile;
       return this;
     }
 
+    public Builder setExecutionMode(ExecutionMode executionMode) {
+      this.executionMode = executionMode;
+      return this;
+    }
+
+    public Builder setHaplotypeEngine(HaplotypeEngine haplotypeEngine) {
+      this.haplotypeEngine = haplotypeEngine;
+      return this;
+    }
+
+    public Builder setHashJoin(boolean hashJoin) {
+      this.hashJoin = hashJoin;
+      return this;
+    }
+
     public Builder setLhsCallsetId(String lhsCallsetId) {
       this.lhsCallsetId = lhsCallsetId;
       return this;
@@ -97,6 +157,26 @@ public class CommandLine {
       return this;
     }
 
+    public Builder setMaxCandidates(Long maxCandidates) {
+      this.maxCandidates = maxCandidates;
+      return this;
+    }
+
+    public Builder setMaxHaplotypes(Long maxHaplotypes) {
+      this.maxHaplotypes = maxHaplotypes;
+      return this;
+    }
+
+    public Builder setMaxWindowMillis(Long maxWindowMillis) {
+      this.maxWindowMillis = maxWindowMillis;
+      return this;
+    }
+
+    public Builder setMaxWindowSize(Integer maxWindowSize) {
+      this.maxWindowSize = maxWindowSize;
+      return this;
+    }
+
     public Builder setP12File(String p12File) {
       this.p12File = p12File;
       return this;
@@ -117,6 +197,11 @@ public class CommandLine {
       return this;
     }
 
+    public Builder setRepeatIndex(String repeatIndex) {
+      this.repeatIndex = repeatIndex;
+      return this;
+    }
+
     public Builder setRhsCallsetId(String rhsCallsetId) {
       this.rhsCallsetId = rhsCallsetId;
       return this;
@@ -142,31 +227,66 @@ public class CommandLine {
       return this;
     }
 
+    public Builder setSplitExactMatches(boolean splitExactMatches) {
+      this.splitExactMatches = splitExactMatches;
+      return this;
+    }
+
+    public Builder setThreads(Integer threads) {
+      this.threads = threads;
+      return this;
+    }
+
     public Builder setTimeout(Integer timeout) {
       this.timeout = timeout;
       return this;
     }
+
+    public Builder setWaitStrategy(RingBuffer.WaitStrategy waitStrategy) {
+      this.waitStrategy = waitStrategy;
+      return this;
+    }
+
+    public Builder setWindowSpan(WindowSpan windowSpan) {
+      this.windowSpan = windowSpan;
+      return this;
+    }
   }
 
   private static final HashCodeAndEquals<CommandLine>
       HASH_CODE_AND_EQUALS = HashCodeAndEquals.create(
           CommandLine.class,
           CommandLine::apiKey,
+          CommandLine::candidateSearch,
+          CommandLine::candidateThreads,
           CommandLine::noLocalServer,
+          CommandLine::normalize,
           CommandLine::clientSecretsFile,
+          CommandLine::executionMode,
+          CommandLine::haplotypeEngine,
+          CommandLine::hashJoin,
           CommandLine::lhsCallsetId,
           CommandLine::lhsSampleId,
           CommandLine::lhsVcf,
+          CommandLine::maxCandidates,
+          CommandLine::maxHaplotypes,
+          CommandLine::maxWindowMillis,
+          CommandLine::maxWindowSize,
           CommandLine::p12File,
           CommandLine::presorted,
           CommandLine::referenceFai,
           CommandLine::referenceFasta,
+          CommandLine::repeatIndex,
           CommandLine::rhsCallsetId,
           CommandLine::rhsSampleId,
           CommandLine::rhsVcf,
           CommandLine::rootUrl,
           CommandLine::serviceAccountId,
-          CommandLine::timeout);
+          CommandLine::splitExactMatches,
+          CommandLine::threads,
+          CommandLine::timeout,
+          CommandLine::waitStrategy,
+          CommandLine::windowSpan);
 
   public static Builder builder() {
     return new Builder();
@@ -191,16 +311,58 @@ public class CommandLine {
       description = "The API key used to authenticate to your Google Cloud project")
   private String apiKey;
 
+  @Parameter(
+      names = { "--candidate_search" },
+      description = "How to search the candidate matches of a window. One of PAIRWISE (the "
+          + "default), which compares the haplotypes of each candidate in turn, or "
+          + "FINGERPRINT_JOIN, which generates the haplotypes of each subset of calls once and "
+          + "joins them on their fingerprints. FINGERPRINT_JOIN always compares the haplotypes as "
+          + "strings on a single thread, so it can't be combined with --haplotype_engine or "
+          + "--candidate_threads")
+  private WindowEvaluator.CandidateSearch candidateSearch;
+
+  @Parameter(
+      names = { "--candidate_threads" },
+      description = "The number of threads used to evaluate the candidate matches of a single "
+          + "expensive window in parallel. Defaults to 1, which evaluates them one at a time")
+  private Integer candidateThreads;
+
   @Parameter(names = "--nolocalserver",
       description = "Disable the starting up of a local server for the auth flows",
       hidden = true)
   public boolean noLocalServer = false;
 
+  @Parameter(
+      names = { "--normalize" },
+      description = "Left-normalize the indels on both sides against the reference as they are "
+          + "read, so that different representations of the same indel match exactly")
+  private boolean normalize;
+
   @Parameter(
       names = { "--client_secrets_file" },
       description = "The client secrets file used to authorize access to your Google Cloud project")
   private String clientSecretsFile;
 
+  @Parameter(
+      names = { "--execution_mode" },
+      description = "How to spread the comparison across threads. One of SEQUENTIAL (the "
+          + "default), CONTIG, COST, REACTIVE, STREAM, VIRTUAL or WINDOW")
+  private ExecutionMode executionMode;
+
+  @Parameter(
+      names = { "--haplotype_engine" },
+      description = "How to check whether two sets of calls generate the same haplotypes. One "
+          + "of ENUMERATE (the default), which generates every haplotype, or AUTOMATON, which "
+          + "compares variation graphs of the calls and scales better with many unphased "
+          + "heterozygous calls")
+  private HaplotypeEngine haplotypeEngine;
+
+  @Parameter(
+      names = { "--hash_join" },
+      description = "If the input isn't presorted, match up the identical calls with a hash "
+          + "table first, and only sort and compare the rest a window at a time")
+  private boolean hashJoin;
+
   @Parameter(
       names = { "--help" },
       description = "Print the help message",
@@ -222,6 +384,31 @@ public class CommandLine {
       description = "The path to the VCF file to use on the left hand side of the comparison")
   private String lhsVcf;
 
+  @Parameter(
+      names = { "--max_candidates" },
+      description = "The largest number of candidates that will be tried in a single window. "
+          + "Windows that need more are reported as unprocessed. Unlimited by default")
+  private Long maxCandidates;
+
+  @Parameter(
+      names = { "--max_haplotypes" },
+      description = "The largest number of haplotypes that will be generated for a single window. "
+          + "Windows that need more are reported as unprocessed. Unlimited by default")
+  private Long maxHaplotypes;
+
+  @Parameter(
+      names = { "--max_window_millis" },
+      description = "The longest time in milliseconds that will be spent searching a single "
+          + "window. Windows that take longer are reported as unprocessed. Unlimited by default")
+  private Long maxWindowMillis;
+
+  @Parameter(
+      names = { "--max_window_size" },
+      description = "The largest number of calls on either side of a window that will be "
+          + "searched for matches. Larger windows are reported as unprocessed. Defaults to 10, and "
+          + "may be at most 16")
+  private Integer maxWindowSize;
+
   @Parameter(
       names = { "--p12_file" },
       description = "The P12 file containing the private key that authorizes the service account "
@@ -243,6 +430,15 @@ public class CommandLine {
       description = " The FASTA file for the reference sequence")
   private String referenceFasta;
 
+  @Parameter(
+      names = { "--repeat_index" },
+      description = "A file holding the index of the tandem repeats of the reference, for "
+          + "--window_span=TANDEM_REPEAT to look up instead of scanning the reference around "
+          + "every call. If the file doesn't exist yet, the index is built and written there. An "
+          + "index that was built from a different reference is rejected. Requires "
+          + "--window_span=TANDEM_REPEAT")
+  private String repeatIndex;
+
   @Parameter(
       names = { "--rhs_callset_id" },
       description = "The callset id to use on the right hand side of the comparison")
@@ -269,58 +465,128 @@ public class CommandLine {
           + "Cloud project")
   private String serviceAccountId;
 
+  @Parameter(
+      names = { "--split_exact_matches" },
+      description = "Set aside the calls that match a call on the other side exactly, and aren't "
+          + "near any call that doesn't, before searching the windows")
+  private boolean splitExactMatches;
+
+  @Parameter(
+      names = { "--threads" },
+      description = "The number of threads to use for the parallel execution modes. Defaults to "
+          + "the number of available processors")
+  private Integer threads;
+
   @Parameter(
       names = { "--timeout" },
       description = "The connect and read timeouts to use when making requests to the cloud")
   private Integer timeout;
 
+  @Parameter(
+      names = { "--wait_strategy" },
+      description = "What the threads that read the input do while they wait for each other: "
+          + "PARK (the default) to sleep briefly, or SPIN to busy-wait for the lowest latency "
+          + "when there are cores to spare")
+  private RingBuffer.WaitStrategy waitStrategy;
+
+  @Parameter(
+      names = { "--window_span" },
+      description = "How to decide which calls are compared together: DISTANCE (the default) to "
+          + "merge calls within 50 bases of each other into a window, or TANDEM_REPEAT to merge "
+          + "them only when the tandem repeats of the reference around them overlap")
+  private WindowSpan windowSpan;
+
   public CommandLine() {
-    this(null, false, null, null, null, null, null, false, null, null, null, null, null, null, null, null);
+    this(null, null, null, false, false, null, null, null, false, null, null, null, null, null,
+        null, null, null, false, null, null, null, null, null, null, null, null, false, null, null,
+        null, null);
   }
 
   private CommandLine(
       String apiKey,
+      WindowEvaluator.CandidateSearch candidateSearch,
+      Integer candidateThreads,
       boolean noLocalServer,
+      boolean normalize,
       String clientSecretsFile,
+      ExecutionMode executionMode,
+      HaplotypeEngine haplotypeEngine,
+      boolean hashJoin,
       String lhsCallsetId,
       String lhsSampleId,
       String lhsVcf,
+      Long maxCandidates,
+      Long maxHaplotypes,
+      Long maxWindowMillis,
+      Integer maxWindowSize,
       String p12File,
       boolean presorted,
       String referenceFai,
       String referenceFasta,
+      String repeatIndex,
       String rhsCallsetId,
       String rhsSampleId,
       String rhsVcf,
       String rootUrl,
       String serviceAccountId,
-      Integer timeout) {
+      boolean splitExactMatches,
+      Integer threads,
+      Integer timeout,
+      RingBuffer.WaitStrategy waitStrategy,
+      WindowSpan windowSpan) {
     this.apiKey = apiKey;
+    this.candidateSearch = candidateSearch;
+    this.candidateThreads = candidateThreads;
     this.noLocalServer = noLocalServer;
+    this.normalize = normalize;
     this.clientSecretsFile = clientSecretsFile;
+    this.executionMode = executionMode;
+    this.haplotypeEngine = haplotypeEngine;
+    this.hashJoin = hashJoin;
     this.lhsCallsetId = lhsCallsetId;
     this.lhsSampleId = lhsSampleId;
     this.lhsVcf = lhsVcf;
+    this.maxCandidates = maxCandidates;
+    this.maxHaplotypes = maxHaplotypes;
+    this.maxWindowMillis = maxWindowMillis;
+    this.maxWindowSize = maxWindowSize;
     this.p12File = p12File;
     this.presorted = presorted;
     this.referenceFai = referenceFai;
     this.referenceFasta = referenceFasta;
+    this.repeatIndex = repeatIndex;
     this.rhsCallsetId = rhsCallsetId;
     this.rhsSampleId = rhsSampleId;
     this.rhsVcf = rhsVcf;
     this.rootUrl = rootUrl;
     this.serviceAccountId = serviceAccountId;
+    this.splitExactMatches = splitExactMatches;
+    this.threads = threads;
     this.timeout = timeout;
+    this.waitStrategy = waitStrategy;
+    this.windowSpan = windowSpan;
   }
 
   public Optional<String> apiKey() {
     return Optional.ofNullable(apiKey);
   }
 
+  public Optional<WindowEvaluator.CandidateSearch> candidateSearch() {
+    return Optional.ofNullable(candidateSearch);
+  }
+
+  public Optional<Integer> candidateThreads() {
+    return Optional.ofNullable(candidateThreads);
+  }
+
   public Optional<Boolean> noLocalServer() {
     return Optional.ofNullable(noLocalServer);
   }
 
+  public boolean normalize() {
+    return normalize;
+  }
+
   public Optional<String> clientSecretsFile() {
     return Optional.ofNullable(clientSecretsFile);
   }
@@ -335,6 +601,18 @@ public class CommandLine {
     return HASH_CODE_AND_EQUALS.hashCode(this);
   }
 
+  public Optional<ExecutionMode> executionMode() {
+    return Optional.ofNullable(executionMode);
+  }
+
+  public Optional<HaplotypeEngine> haplotypeEngine() {
+    return Optional.ofNullable(haplotypeEngine);
+  }
+
+  public boolean hashJoin() {
+    return hashJoin;
+  }
+
   public Optional<String> lhsCallsetId() {
     return Optional.ofNullable(lhsCallsetId);
   }
@@ -347,6 +625,22 @@ public class CommandLine {
     return Optional.ofNullable(lhsVcf);
   }
 
+  public Optional<Long> maxCandidates() {
+    return Optional.ofNullable(maxCandidates);
+  }
+
+  public Optional<Long> maxHaplotypes() {
+    return Optional.ofNullable(maxHaplotypes);
+  }
+
+  public Optional<Long> maxWindowMillis() {
+    return Optional.ofNullable(maxWindowMillis);
+  }
+
+  public Optional<Integer> maxWindowSize() {
+    return Optional.ofNullable(maxWindowSize);
+  }
+
   public Optional<String> p12File() {
     return Optional.ofNullable(p12File);
   }
@@ -363,6 +657,10 @@ public class CommandLine {
     return Optional.ofNullable(referenceFasta);
   }
 
+  public Optional<String> repeatIndex() {
+    return Optional.ofNullable(repeatIndex);
+  }
+
   public Optional<String> rhsCallsetId() {
     return Optional.ofNullable(rhsCallsetId);
   }
@@ -383,7 +681,23 @@ public class CommandLine {
     return Optional.ofNullable(serviceAccountId);
   }
 
+  public boolean splitExactMatches() {
+    return splitExactMatches;
+  }
+
+  public Optional<Integer> threads() {
+    return Optional.ofNullable(threads);
+  }
+
   public Optional<Integer> timeout() {
     return Optional.ofNullable(timeout);
   }
+
+  public Optional<RingBuffer.WaitStrategy> waitStrategy() {
+    return Optional.ofNullable(waitStrategy);
+  }
+
+  public Optional<WindowSpan> windowSpan() {
+    return Optional.ofNullable(windowSpan);
+  }
 }
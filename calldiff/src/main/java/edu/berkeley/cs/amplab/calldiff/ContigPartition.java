@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * All the calls from the left hand and right hand sides that fall on a single contig. Windows never
+ * span contigs, so each partition can be compared independently of all the others.
+ */
+public class ContigPartition {
+
+  private static final HashCodeAndEquals<ContigPartition> HASH_CODE_AND_EQUALS =
+      HashCodeAndEquals.create(
+          ContigPartition.class,
+          ContigPartition::contig,
+          ContigPartition::lhs,
+          ContigPartition::rhs);
+
+  public static ContigPartition create(String contig, ArrayList<Call> lhs, ArrayList<Call> rhs) {
+    return new ContigPartition(contig, lhs, rhs);
+  }
+
+  private static ArrayList<Call> drain(PeekingIterator<Call> iterator, String contig) {
+    ArrayList<Call> calls = new ArrayList<>();
+    while (iterator.hasNext() && Objects.equals(contig, iterator.peek().contig())) {
+      calls.add(iterator.next());
+    }
+    return calls;
+  }
+
+  /**
+   * Group the calls from the left hand and right hand sides by contig. Both streams must be sorted
+   * by contig and then by position, and the partitions are produced lazily in that same order.
+   */
+  public static Stream<ContigPartition> partition(Stream<Call> lhs, Stream<Call> rhs) {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            new AbstractIterator<ContigPartition>() {
+
+              private final PeekingIterator<Call>
+                  lhsIterator = Iterators.peekingIterator(lhs.iterator()),
+                  rhsIterator = Iterators.peekingIterator(rhs.iterator());
+
+              @Override protected ContigPartition computeNext() {
+                boolean lhsHasNext = lhsIterator.hasNext(), rhsHasNext = rhsIterator.hasNext();
+                if (lhsHasNext || rhsHasNext) {
+                  String contig = !rhsHasNext
+                      ? lhsIterator.peek().contig()
+                      : !lhsHasNext
+                          ? rhsIterator.peek().contig()
+                          : min(lhsIterator.peek().contig(), rhsIterator.peek().contig());
+                  return create(contig, drain(lhsIterator, contig), drain(rhsIterator, contig));
+                }
+                return endOfData();
+              }
+
+              private String min(String lhs, String rhs) {
+                return lhs.compareTo(rhs) <= 0 ? lhs : rhs;
+              }
+            },
+            Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL),
+        false);
+  }
+
+  private final String contig;
+  private final ArrayList<Call> lhs, rhs;
+
+  private ContigPartition(String contig, ArrayList<Call> lhs, ArrayList<Call> rhs) {
+    this.contig = contig;
+    this.lhs = lhs;
+    this.rhs = rhs;
+  }
+
+  public DiffStats calldiff(WindowEvaluator evaluator) {
+    return evaluator.partition(lhs(), rhs())
+        .map(evaluator)
+        .collect(DiffStats.builder());
+  }
+
+  public String contig() {
+    return contig;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return HASH_CODE_AND_EQUALS.equals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return HASH_CODE_AND_EQUALS.hashCode(this);
+  }
+
+  public ArrayList<Call> lhs() {
+    return lhs;
+  }
+
+  public ArrayList<Call> rhs() {
+    return rhs;
+  }
+
+  @Override
+  public String toString() {
+    return Stream
+        .of(
+            Stream.of("contig", contig()),
+            Stream.of("lhs", lhs()),
+            Stream.of("rhs", rhs()))
+        .map(stream -> stream.map(Object::toString).collect(Collectors.joining("=")))
+        .collect(Collectors.joining(", "));
+  }
+}
@@ -18,6 +18,7 @@ package edu.berkeley.cs.amplab.calldiff;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 
 import java.util.Collection;
@@ -53,8 +54,10 @@ public class DiffStats {
         matchingRhs = ImmutableMultiset.builder(),
         notMatchingLhs = ImmutableMultiset.builder(),
         notMatchingRhs = ImmutableMultiset.builder();
-    private final ImmutableList.Builder<Window>
-        unprocessedWindows = ImmutableList.builder();
+    private final ImmutableMultiset.Builder<OutputTuple.Resolution>
+        resolutions = ImmutableMultiset.builder();
+    private final ImmutableList.Builder<OutputTuple>
+        unprocessed = ImmutableList.builder();
 
     private Builder() {}
 
@@ -64,21 +67,34 @@ public class DiffStats {
         addAll(builder.matchingRhs, tuple.matchingRhs());
         addAll(builder.notMatchingLhs, tuple.notMatchingLhs());
         addAll(builder.notMatchingRhs, tuple.notMatchingRhs());
-        Window window = tuple.window();
-        if (window.isTooLarge()) {
-          unprocessedWindows.add(window);
+        builder.resolutions.add(tuple.resolution());
+        if (!tuple.resolution().isProcessed()) {
+          builder.unprocessed.add(tuple);
         }
       };
     }
 
+    private Builder addAll(Builder other) {
+      matchingLhs.addAll(other.matchingLhs.build());
+      matchingRhs.addAll(other.matchingRhs.build());
+      notMatchingLhs.addAll(other.notMatchingLhs.build());
+      notMatchingRhs.addAll(other.notMatchingRhs.build());
+      resolutions.addAll(other.resolutions.build());
+      unprocessed.addAll(other.unprocessed.build());
+      return this;
+    }
+
     @Override public Set<Collector.Characteristics> characteristics() {
       return CHARACTERISTICS;
     }
 
+    /**
+     * Partial results are plain counts plus a list of the windows that were skipped, so combining
+     * two of them is just adding one to the other. This is what lets a parallel stream of
+     * {@link OutputTuple}s be reduced without going through a single accumulator.
+     */
     @Override public BinaryOperator<Builder> combiner() {
-      return (lhs, rhs) -> {
-        throw new UnsupportedOperationException();
-      };
+      return Builder::addAll;
     }
 
     @Override public Function<Builder, DiffStats> finisher() {
@@ -87,7 +103,8 @@ public class DiffStats {
           builder.matchingRhs.build(),
           builder.notMatchingLhs.build(),
           builder.notMatchingRhs.build(),
-          builder.unprocessedWindows.build());
+          builder.resolutions.build(),
+          builder.unprocessed.build());
     }
 
     @Override public Supplier<Builder> supplier() {
@@ -100,26 +117,61 @@ public class DiffStats {
       DiffStats::matchingLhs,
       DiffStats::matchingRhs,
       DiffStats::notMatchingLhs,
-      DiffStats::notMatchingRhs);
+      DiffStats::notMatchingRhs,
+      DiffStats::resolutions);
 
   public static Builder builder() {
     return new Builder();
   }
+
+  /**
+   * Combine the statistics computed over disjoint parts of the genome, for example one contig at a
+   * time, into the statistics for the whole.
+   */
+  public static DiffStats merge(Iterable<DiffStats> stats) {
+    ImmutableMultiset.Builder<Call.Type>
+        matchingLhs = ImmutableMultiset.builder(),
+        matchingRhs = ImmutableMultiset.builder(),
+        notMatchingLhs = ImmutableMultiset.builder(),
+        notMatchingRhs = ImmutableMultiset.builder();
+    ImmutableMultiset.Builder<OutputTuple.Resolution> resolutions = ImmutableMultiset.builder();
+    ImmutableList.Builder<OutputTuple> unprocessed = ImmutableList.builder();
+    for (DiffStats stat : stats) {
+      matchingLhs.addAll(stat.matchingLhs());
+      matchingRhs.addAll(stat.matchingRhs());
+      notMatchingLhs.addAll(stat.notMatchingLhs());
+      notMatchingRhs.addAll(stat.notMatchingRhs());
+      resolutions.addAll(stat.resolutions());
+      unprocessed.addAll(stat.unprocessed());
+    }
+    return new DiffStats(
+        matchingLhs.build(),
+        matchingRhs.build(),
+        notMatchingLhs.build(),
+        notMatchingRhs.build(),
+        resolutions.build(),
+        unprocessed.build());
+  }
+
   private final Multiset<Call.Type> matchingLhs, matchingRhs, notMatchingLhs, notMatchingRhs;
 
-  private final List<Window> unprocessedWindows;
+  private final Multiset<OutputTuple.Resolution> resolutions;
+
+  private final List<OutputTuple> unprocessed;
 
   private DiffStats(
       Multiset<Call.Type> matchingLhs,
       Multiset<Call.Type> matchingRhs,
       Multiset<Call.Type> notMatchingLhs,
       Multiset<Call.Type> notMatchingRhs,
-      List<Window> unprocessedWindows) {
+      Multiset<OutputTuple.Resolution> resolutions,
+      List<OutputTuple> unprocessed) {
     this.matchingLhs = matchingLhs;
     this.matchingRhs = matchingRhs;
     this.notMatchingLhs = notMatchingLhs;
     this.notMatchingRhs = notMatchingRhs;
-    this.unprocessedWindows = unprocessedWindows;
+    this.resolutions = resolutions;
+    this.unprocessed = unprocessed;
   }
 
   @Override
@@ -148,6 +200,13 @@ public class DiffStats {
     return notMatchingRhs;
   }
 
+  /**
+   * How many windows were resolved in each way.
+   */
+  public Multiset<OutputTuple.Resolution> resolutions() {
+    return resolutions;
+  }
+
   @Override
   public String toString() {
     return Stream
@@ -183,15 +242,29 @@ public class DiffStats {
                                           "=%.3f%%", ((double) 100 * matchingRhs) / totalRhs))));
                         }))
                 .map(stream -> stream.map(Object::toString).collect(Collectors.joining("\t"))),
-            unprocessedWindows.isEmpty()
-                ? Stream.empty()
-                : Stream.concat(
-                    Stream.of("Unprocessed windows:"),
-                    unprocessedWindows.stream().map(Object::toString)))
+            Stream.concat(
+                Stream.of(Stream.of(OutputTuple.Resolution.values())
+                    .map(resolution -> String.format(
+                        "%s=%d", resolution.name().toLowerCase(), resolutions.count(resolution)))
+                    .collect(Collectors.joining(", ", "Windows: ", ""))),
+                unprocessed.isEmpty()
+                    ? Stream.empty()
+                    : Stream.concat(
+                        Stream.of("Unprocessed windows:"),
+                        unprocessed.stream().map(tuple -> String.format("%s: %s",
+                            tuple.resolution().name().toLowerCase(), tuple.window())))))
         .collect(Collectors.joining(String.format("%n")));
   }
 
+  /**
+   * The tuples of the windows whose calls weren't sorted into matching and not matching, in the
+   * order they were collected. Their {@link OutputTuple#resolution} says why.
+   */
+  public List<OutputTuple> unprocessed() {
+    return unprocessed;
+  }
+
   public List<Window> unprocessedWindows() {
-    return unprocessedWindows;
+    return Lists.transform(unprocessed, OutputTuple::window);
   }
 }
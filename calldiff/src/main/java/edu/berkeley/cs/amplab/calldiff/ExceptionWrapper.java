@@ -16,6 +16,8 @@
  */
 package edu.berkeley.cs.amplab.calldiff;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
 /**
@@ -25,6 +27,27 @@ import java.util.function.Function;
  */
 public class ExceptionWrapper extends RuntimeException {
 
+  /**
+   * Wait for {@code future} and return its result. If the task failed, its exception is rethrown
+   * as is when it's unchecked, and wrapped otherwise.
+   */
+  public static <X> X getUnchecked(Future<X> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw wrap(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw wrap((Exception) cause);
+    }
+  }
+
   public static ExceptionWrapper wrap(Exception cause) {
     return new ExceptionWrapper(cause);
   }
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The strategies available for turning the sorted left hand and right hand call streams into a
+ * {@link DiffStats}. They all compute the same result, and differ only in how the work is spread
+ * across threads.
+ */
+public enum ExecutionMode {
+
+  /**
+   * Partition and compare every window on the calling thread.
+   */
+  SEQUENTIAL {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      return evaluator.partition(lhs, rhs).map(evaluator).collect(DiffStats.builder());
+    }
+  },
+
+  /**
+   * Route the calls into one {@link ContigPartition} per contig, and compare the contigs
+   * independently on a {@link ForkJoinPool}. Reading the input continues while the contigs that
+   * have already been read are compared.
+   */
+  CONTIG {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        List<ForkJoinTask<DiffStats>> tasks = ContigPartition.partition(lhs, rhs)
+            .map(partition -> pool.submit(() -> partition.calldiff(evaluator)))
+            .collect(Collectors.toList());
+        return DiffStats.merge(tasks.stream()
+            .map(ForkJoinTask::join)
+            .collect(Collectors.toList()));
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+  },
+
+  /**
+   * Like {@link #WINDOW}, except that windows whose {@link WindowEvaluator#estimatedCost} is at
+   * least {@code HEAVY_WINDOW_COST} are sent to a separate {@link LongestFirstExecutor}, which
+   * compares the most expensive of them first. The cheap windows keep flowing through the main
+   * pool in the meantime, so a handful of pathological windows start as early as possible instead
+   * of holding up the end of the run. The threads are split evenly between the two pools, so with
+   * a single thread this is just {@link #WINDOW}.
+   */
+  COST {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      int heavyThreads = threads / 2, lightThreads = threads - heavyThreads;
+      if (0 == heavyThreads) {
+        return WINDOW.calldiff(evaluator, lhs, rhs, threads);
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(lightThreads,
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("calldiff-window-%d")
+              .build());
+      LongestFirstExecutor heavyExecutor =
+          LongestFirstExecutor.create(heavyThreads, "calldiff-heavy-window-%d");
+      try {
+        List<Future<OutputTuple>> heavyTuples = new ArrayList<>();
+        DiffStats stats;
+        try (Stream<OutputTuple> tuples = InOrderExecutor
+            .create(executor, lightThreads * WINDOWS_IN_FLIGHT_PER_THREAD)
+            .map(
+                evaluator.partition(lhs, rhs).filter(window -> {
+                      double cost = evaluator.estimatedCost(window);
+                      if (cost < HEAVY_WINDOW_COST) {
+                        return true;
+                      }
+                      heavyTuples.add(heavyExecutor.submit(() -> evaluator.apply(window), cost));
+                      return false;
+                    }),
+                evaluator)) {
+          stats = tuples.collect(DiffStats.builder());
+        }
+        return DiffStats.merge(Arrays.asList(
+            stats,
+            heavyTuples.stream()
+                .map(ExceptionWrapper::getUnchecked)
+                .collect(DiffStats.builder())));
+      } finally {
+        heavyExecutor.shutdownNow();
+        executor.shutdownNow();
+      }
+    }
+  },
+
+  /**
+   * Run the partitioning, the candidate search and the collection of the statistics as separate
+   * {@link Flow} stages, connected by bounded buffers of {@code FLOW_BUFFER_SIZE} items. Each
+   * stage only asks the one upstream of it for as many items as it has room for, so a run of
+   * expensive windows slows down the parsing of the input rather than letting it buffer up. The
+   * stages run concurrently with each other, but each stage is single threaded. Only the search
+   * stage buffers items: the partitioning only produces windows when they are asked for, and the
+   * statistics are collected as the tuples arrive. How many items each stage passed on, the depth
+   * of the search buffer and the demand outstanding between the stages are logged when the
+   * comparison finishes.
+   */
+  REACTIVE {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("calldiff-flow-%d")
+          .build());
+      try {
+        IteratorPublisher<Window> windows =
+            IteratorPublisher.create(evaluator.partition(lhs, rhs).iterator(), executor);
+        MappingProcessor<Window, OutputTuple> search =
+            MappingProcessor.create(evaluator, executor, FLOW_BUFFER_SIZE);
+        CollectorSubscriber<OutputTuple, DiffStats.Builder, DiffStats> stats =
+            CollectorSubscriber.create(DiffStats.builder(), FLOW_BUFFER_SIZE);
+        windows.subscribe(search);
+        search.subscribe(stats);
+        try {
+          return stats.result().join();
+        } catch (CompletionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw ExceptionWrapper.wrap((Exception) cause);
+        } finally {
+          LOGGER.fine(String.format("Partition stage: windows=%d, outstanding demand=%d",
+              windows.emitted(),
+              windows.outstandingDemand()));
+          LOGGER.fine(String.format(
+              "Candidate search stage: tuples=%d, buffer depth=%d, max buffer depth=%d, "
+                  + "outstanding demand=%d",
+              search.emitted(),
+              search.queueDepth(),
+              search.maxQueueDepth(),
+              search.outstandingDemand()));
+          LOGGER.fine(String.format("Statistics stage: tuples collected=%d", stats.collected()));
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  },
+
+  /**
+   * Read both sides into memory and compare the windows with a parallel stream on a
+   * {@link ForkJoinPool} of {@code threads} workers. The stream is split at the gaps between
+   * windows, so no partitioning has to happen up front.
+   */
+  STREAM {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      List<Call>
+          lhsCalls = lhs.collect(Collectors.toCollection(ArrayList::new)),
+          rhsCalls = rhs.collect(Collectors.toCollection(ArrayList::new));
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        return pool
+            .submit(() -> evaluator.partition(lhsCalls, rhsCalls)
+                .parallel()
+                .map(evaluator)
+                .collect(DiffStats.builder()))
+            .join();
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+  },
+
+  /**
+   * Compare each contig on its own virtual thread, and within each contig compare every window on
+   * its own virtual thread, with at most {@code threads * WINDOWS_IN_FLIGHT_PER_THREAD} windows of
+   * a contig in flight at once. The tasks are structured: the call doesn't return until every
+   * thread it started has finished, and a failure in any of them cancels the rest. Only available
+   * when built with the {@code virtual-threads} Maven profile and run on Java 21 or later.
+   */
+  VIRTUAL {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      if (!isSupported()) {
+        throw new IllegalStateException("The VIRTUAL execution mode requires a build with the "
+            + "virtual-threads profile running on Java 21 or later");
+      }
+      ExecutorService executor = newVirtualThreadExecutor();
+      try (Stream<DiffStats> contigs = InOrderExecutor.create(executor, threads)
+          .map(ContigPartition.partition(lhs, rhs), partition -> {
+                try (Stream<OutputTuple> tuples = InOrderExecutor
+                    .create(executor, threads * WINDOWS_IN_FLIGHT_PER_THREAD)
+                    .map(
+                        evaluator.partition(partition.lhs(), partition.rhs()),
+                        evaluator)) {
+                  return tuples.collect(DiffStats.builder());
+                }
+              })) {
+        return DiffStats.merge(contigs.collect(Collectors.toList()));
+      } finally {
+        shutdownAndAwaitTermination(executor);
+      }
+    }
+
+    @Override public boolean isSupported() {
+      try {
+        Class.forName(VIRTUAL_THREADS_CLASS);
+        return true;
+      } catch (ClassNotFoundException | LinkageError e) {
+        return false;
+      }
+    }
+  },
+
+  /**
+   * Partition the calls into windows on the calling thread, and compare the windows on a pool of
+   * {@code threads} workers. The results are reassembled in genomic order before they are
+   * collected, so anything that consumes the {@link OutputTuple}s sees them exactly as it would in
+   * {@link #SEQUENTIAL} mode. This parallelizes the candidate search even within a single contig.
+   */
+  WINDOW {
+    @Override public DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+        Stream<Call> rhs, int threads) {
+      ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("calldiff-window-%d")
+          .build());
+      try (Stream<OutputTuple> tuples = InOrderExecutor
+          .create(executor, threads * WINDOWS_IN_FLIGHT_PER_THREAD)
+          .map(evaluator.partition(lhs, rhs), evaluator)) {
+        return tuples.collect(DiffStats.builder());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  };
+
+  private static final int FLOW_BUFFER_SIZE = 64;
+
+  /**
+   * The {@link WindowEvaluator#estimatedCost} from which {@link #COST} mode treats a window as
+   * heavy. It corresponds to a window of about four heterozygous calls on each side.
+   */
+  private static final double HEAVY_WINDOW_COST = 1 << 12;
+
+  private static final Logger LOGGER = Logger.getLogger(ExecutionMode.class.getName());
+
+  private static final String
+      VIRTUAL_THREADS_CLASS = "edu.berkeley.cs.amplab.calldiff.VirtualThreads";
+
+  /**
+   * How many windows each worker may have queued up in {@link #WINDOW} mode, so that one
+   * expensive window doesn't stall the other workers while it's being waited on.
+   */
+  private static final int WINDOWS_IN_FLIGHT_PER_THREAD = 4;
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Class.forName(VIRTUAL_THREADS_CLASS)
+          .getMethod("newExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void shutdownAndAwaitTermination(ExecutorService executor) {
+    executor.shutdownNow();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public abstract DiffStats calldiff(WindowEvaluator evaluator, Stream<Call> lhs,
+      Stream<Call> rhs, int threads);
+
+  /**
+   * Whether this mode can run in the current build and JVM.
+   */
+  public boolean isSupported() {
+    return true;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the same candidate for a window as trying each of {@link Window#candidates} in turn
+ * would, but generates the haplotypes of each subset of calls only once instead of once for every
+ * pair it appears in. The subsets are enumerated so that each one's haplotypes are built from
+ * those of a subset with one call fewer, by applying just that call. Each set of haplotypes is
+ * summarized by a 128-bit fingerprint, the right hand subsets are put in a hash table keyed by
+ * their fingerprints, and every left hand subset is looked up in it. Fingerprint hits are
+ * confirmed by comparing the haplotypes themselves. The first of the candidates whose pair of
+ * subsets matched is the one returned.
+ */
+public class FingerprintJoin {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  public static Optional<CandidateCalls> findFirst(Window window,
+      FastaReader.FastaFile reference) {
+    return findFirst(window, reference, WindowBudget.UNLIMITED.start());
+  }
+
+  /**
+   * Like {@link #findFirst(Window, FastaReader.FastaFile)}, charging the haplotypes of each subset
+   * and each candidate that is looked up to {@code tracker}.
+   */
+  static Optional<CandidateCalls> findFirst(Window window, FastaReader.FastaFile reference,
+      WindowBudget.Tracker tracker) {
+    HaplotypeGenerator.Haplotypes empty = HaplotypeGenerator.Haplotypes
+        .create(reference, window.contig(), window.start(), window.end());
+    Map<HashCode, List<Map.Entry<List<Call>, Set<String>>>> table = new HashMap<>();
+    CandidateCalls.forEachNonOverlappingSubset(
+        window.rhs(),
+        empty,
+        HaplotypeGenerator.Haplotypes::add,
+        (rhs, haplotypes) -> {
+          Set<String> strings = haplotypes.strings();
+          tracker.chargeHaplotypes(strings.size());
+          table.computeIfAbsent(fingerprint(strings), key -> new ArrayList<>())
+              .add(new AbstractMap.SimpleImmutableEntry<>(rhs, strings));
+        });
+    Set<List<List<Call>>> matches = new HashSet<>();
+    CandidateCalls.forEachNonOverlappingSubset(
+        window.lhs(),
+        empty,
+        HaplotypeGenerator.Haplotypes::add,
+        (lhs, haplotypes) -> {
+          Set<String> strings = haplotypes.strings();
+          tracker.chargeHaplotypes(strings.size());
+          for (Map.Entry<List<Call>, Set<String>> rhs
+              : table.getOrDefault(fingerprint(strings), Collections.emptyList())) {
+            if (strings.equals(rhs.getValue())) {
+              matches.add(Arrays.asList(lhs, rhs.getKey()));
+            }
+          }
+        });
+    return window.candidates(tracker)
+        .filter(candidates -> {
+              tracker.chargeCandidate();
+              return matches.contains(Arrays.asList(candidates.lhs(), candidates.rhs()));
+            })
+        .findFirst();
+  }
+
+  /**
+   * A fingerprint of {@code haplotypes} that doesn't depend on the order they're iterated in.
+   */
+  static HashCode fingerprint(Set<String> haplotypes) {
+    return Hashing.combineUnordered(haplotypes.stream()
+        .map(HASH_FUNCTION::hashUnencodedChars)
+        .collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+/**
+ * The reactive streams interfaces from {@code java.util.concurrent.Flow}, which only exists from
+ * Java 9 onwards. The signatures and the rules for using them are the same, so moving to the JDK
+ * versions is a matter of changing imports. A {@link Subscriber} never receives more
+ * {@link Subscriber#onNext} calls than it has asked for through {@link Subscription#request},
+ * which is what lets a slow stage hold back the stages upstream of it.
+ */
+public final class Flow {
+
+  public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {}
+
+  public interface Publisher<T> {
+
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  public interface Subscriber<T> {
+
+    void onComplete();
+
+    void onError(Throwable throwable);
+
+    void onNext(T item);
+
+    void onSubscribe(Subscription subscription);
+  }
+
+  public interface Subscription {
+
+    void cancel();
+
+    void request(long n);
+  }
+
+  private Flow() {}
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A nondeterministic finite automaton that accepts exactly the haplotypes that
+ * {@link HaplotypeGenerator#generateHaplotypes} would generate for the same calls, without
+ * enumerating them. The automaton is a variation graph: a path through the reference between the
+ * calls, with a branch for every allele at each call. Unphased calls branch independently, so they
+ * only add states in proportion to the length of their alleles. The calls of a phaseset must all
+ * take the same allele, so the states between the first and the last call of a phaseset also
+ * record which allele the phaseset took. Like {@link HaplotypeGenerator}, it rejects phasesets
+ * whose calls have different numbers of alleles.
+ *
+ * <p>Two automata are compared by walking the product of their subset constructions, which
+ * only visits the pairs of deterministic states that are reachable, and stops at the first
+ * difference.
+ */
+public class HaplotypeAutomaton {
+
+  public static HaplotypeAutomaton create(FastaReader.FastaFile reference, String contig,
+      List<Call> calls, int beginning, int end) {
+    List<Call> sorted = calls.stream()
+        .sorted(Comparator.comparing(Call::position))
+        .collect(Collectors.toList());
+    Map<Call.Phaseset, Call> lastCalls = new HashMap<>();
+    Map<Call.Phaseset, Integer> ploidies = new HashMap<>();
+    for (Call call : sorted) {
+      call.phaseset().ifPresent(phaseset -> {
+            int ploidy = call.genotype().size();
+            Preconditions.checkState(
+                ploidy == ploidies.computeIfAbsent(phaseset, key -> ploidy),
+                "Calls in same phaseset has different number of alleles");
+            lastCalls.put(phaseset, call);
+          });
+    }
+    HaplotypeAutomaton automaton = new HaplotypeAutomaton();
+    Map<Map<Call.Phaseset, Integer>, Integer> tips =
+        Collections.singletonMap(Collections.emptyMap(), automaton.addState());
+    int position = beginning;
+    for (Call call : sorted) {
+      tips = automaton.addReference(tips, reference.get(contig, position, call.position()));
+      List<String> alleles = Stream
+          .concat(Stream.of(call.reference()), call.alternates().stream())
+          .map(CaseNormalizer::normalizeCase)
+          .collect(Collectors.toList());
+      List<Integer> genotype = call.genotype();
+      Optional<Call.Phaseset> phaseset = call.phaseset();
+      boolean last = phaseset.isPresent() && call == lastCalls.get(phaseset.get());
+      Map<Map<Call.Phaseset, Integer>, Integer> next = new LinkedHashMap<>();
+      for (Map.Entry<Map<Call.Phaseset, Integer>, Integer> tip : tips.entrySet()) {
+        Map<Call.Phaseset, Integer> context = tip.getKey();
+        Integer taken = phaseset.map(context::get).orElse(null);
+        for (int allele = 0; allele < genotype.size(); ++allele) {
+          if (null == taken || taken == allele) {
+            Map<Call.Phaseset, Integer> nextContext = context;
+            if (phaseset.isPresent() && (last || null == taken)) {
+              nextContext = new HashMap<>(context);
+              if (last) {
+                nextContext.remove(phaseset.get());
+              } else {
+                nextContext.put(phaseset.get(), allele);
+              }
+            }
+            automaton.addString(
+                tip.getValue(),
+                alleles.get(genotype.get(allele)),
+                next.computeIfAbsent(nextContext, key -> automaton.addState()));
+          }
+        }
+      }
+      tips = next;
+      position = call.position() + call.reference().length();
+    }
+    for (int state : automaton.addReference(tips, reference.get(contig, position, end)).values()) {
+      automaton.accepting.set(state);
+    }
+    return automaton;
+  }
+
+  private final BitSet accepting = new BitSet();
+  private final List<List<Integer>> epsilons = new ArrayList<>();
+  private final List<Map<Character, List<Integer>>> transitions = new ArrayList<>();
+
+  private HaplotypeAutomaton() {}
+
+  private Map<Map<Call.Phaseset, Integer>, Integer>
+      addReference(Map<Map<Call.Phaseset, Integer>, Integer> tips, String reference) {
+    Map<Map<Call.Phaseset, Integer>, Integer> next = new LinkedHashMap<>();
+    for (Map.Entry<Map<Call.Phaseset, Integer>, Integer> tip : tips.entrySet()) {
+      int state = tip.getValue();
+      for (int i = 0; i < reference.length(); ++i) {
+        int target = addState();
+        addTransition(state, reference.charAt(i), target);
+        state = target;
+      }
+      next.put(tip.getKey(), state);
+    }
+    return next;
+  }
+
+  private int addState() {
+    epsilons.add(new ArrayList<>());
+    transitions.add(new TreeMap<>());
+    return transitions.size() - 1;
+  }
+
+  /**
+   * Add a path from {@code source} to {@code target} that spells out {@code string}.
+   */
+  private void addString(int source, String string, int target) {
+    int length = string.length();
+    if (0 == length) {
+      epsilons.get(source).add(target);
+    } else {
+      int state = source;
+      for (int i = 0; i < length - 1; ++i) {
+        int next = addState();
+        addTransition(state, string.charAt(i), next);
+        state = next;
+      }
+      addTransition(state, string.charAt(length - 1), target);
+    }
+  }
+
+  private void addTransition(int source, char c, int target) {
+    transitions.get(source).computeIfAbsent(c, key -> new ArrayList<>()).add(target);
+  }
+
+  private BitSet closure(BitSet states) {
+    BitSet closure = (BitSet) states.clone();
+    Deque<Integer> stack = new ArrayDeque<>();
+    states.stream().forEach(stack::push);
+    while (!stack.isEmpty()) {
+      for (int target : epsilons.get(stack.pop())) {
+        if (!closure.get(target)) {
+          closure.set(target);
+          stack.push(target);
+        }
+      }
+    }
+    return closure;
+  }
+
+  private boolean isAccepting(BitSet states) {
+    return states.intersects(accepting);
+  }
+
+  /**
+   * Whether this automaton accepts exactly the same haplotypes as {@code other}. Every state of
+   * either automaton lies on a path to an accepting state, so two deterministic states can only be
+   * equivalent if they agree on whether they accept and on which characters they can read next.
+   */
+  public boolean isEquivalentTo(HaplotypeAutomaton other) {
+    BitSet lhsStart = new BitSet(), rhsStart = new BitSet();
+    lhsStart.set(0);
+    rhsStart.set(0);
+    List<BitSet> start = Arrays.asList(closure(lhsStart), other.closure(rhsStart));
+    Set<List<BitSet>> visited = new HashSet<>();
+    Deque<List<BitSet>> stack = new ArrayDeque<>();
+    visited.add(start);
+    stack.push(start);
+    while (!stack.isEmpty()) {
+      List<BitSet> pair = stack.pop();
+      BitSet lhs = pair.get(0), rhs = pair.get(1);
+      if (isAccepting(lhs) != other.isAccepting(rhs)) {
+        return false;
+      }
+      Map<Character, BitSet>
+          lhsSuccessors = successors(lhs),
+          rhsSuccessors = other.successors(rhs);
+      if (!lhsSuccessors.keySet().equals(rhsSuccessors.keySet())) {
+        return false;
+      }
+      for (Map.Entry<Character, BitSet> entry : lhsSuccessors.entrySet()) {
+        List<BitSet> next = Arrays.asList(entry.getValue(), rhsSuccessors.get(entry.getKey()));
+        if (visited.add(next)) {
+          stack.push(next);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The number of states in this automaton.
+   */
+  public int size() {
+    return transitions.size();
+  }
+
+  /**
+   * The deterministic state that {@code states} moves to on each character it can read.
+   */
+  private Map<Character, BitSet> successors(BitSet states) {
+    Map<Character, BitSet> successors = new TreeMap<>();
+    states.stream().forEach(state -> {
+          for (Map.Entry<Character, List<Integer>> entry : transitions.get(state).entrySet()) {
+            BitSet targets = successors.computeIfAbsent(entry.getKey(), key -> new BitSet());
+            for (int target : entry.getValue()) {
+              targets.set(target);
+            }
+          }
+        });
+    successors.replaceAll((c, targets) -> closure(targets));
+    return successors;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The ways of deciding whether two sets of calls generate the same set of haplotypes over a
+ * window. They always agree, and differ only in how the work grows with the number of calls.
+ */
+public enum HaplotypeEngine {
+
+  /**
+   * Generate every haplotype as a string with {@link HaplotypeGenerator}, and compare the two sets
+   * of strings. Each unphased heterozygous call doubles the work.
+   */
+  ENUMERATE {
+    @Override public boolean generateSameSetOfHaplotypes(FastaReader.FastaFile reference,
+        String contig, List<Call> lhs, List<Call> rhs, int beginning, int end) {
+      return Objects.equals(
+          HaplotypeGenerator.generateHaplotypes(reference, contig, lhs, beginning, end),
+          HaplotypeGenerator.generateHaplotypes(reference, contig, rhs, beginning, end));
+    }
+  },
+
+  /**
+   * Build a {@link HaplotypeAutomaton} for each side, and test whether they accept the same
+   * language. Unphased calls only add to the size of the automata instead of multiplying it.
+   */
+  AUTOMATON {
+    @Override public boolean generateSameSetOfHaplotypes(FastaReader.FastaFile reference,
+        String contig, List<Call> lhs, List<Call> rhs, int beginning, int end) {
+      return HaplotypeAutomaton.create(reference, contig, lhs, beginning, end)
+          .isEquivalentTo(HaplotypeAutomaton.create(reference, contig, rhs, beginning, end));
+    }
+  };
+
+  public abstract boolean generateSameSetOfHaplotypes(FastaReader.FastaFile reference,
+      String contig, List<Call> lhs, List<Call> rhs, int beginning, int end);
+}
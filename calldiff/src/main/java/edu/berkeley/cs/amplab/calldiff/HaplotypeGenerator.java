@@ -19,6 +19,8 @@ package edu.berkeley.cs.amplab.calldiff;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -525,6 +527,43 @@ public class HaplotypeGenerator {
       Preconditions.checkState(1 == list.size(), message);
       return Iterables.getOnlyElement(list);
     }
+
+    /**
+     * Replace the reference allele of {@code call} in {@code string} with the allele that the
+     * haplotype with index {@code allele} takes, and return the offsets after the replacement.
+     */
+    private static NavigableMap<Integer, Integer> replace(StringBuilder string,
+        NavigableMap<Integer, Integer> offsets, Call call, int allele) {
+      String
+          reference = call.reference(),
+          replacement = Stream
+              .concat(Stream.of(reference), call.alternates().stream())
+              .map(CaseNormalizer::normalizeCase)
+              .collect(Collectors.toList())
+              .get(call.genotype().get(allele));
+      int referenceLength = reference.length(),
+          replacementLength = replacement.length(),
+          delta = replacementLength - referenceLength,
+          start = call.position(),
+          end = start + referenceLength;
+      Map.Entry<Integer, Integer> floor = offsets.floorEntry(start);
+      int newStart = start + floor.getValue() - floor.getKey(),
+          newEnd = newStart + referenceLength;
+      assert string.substring(newStart, newEnd).equals(reference);
+      string.replace(newStart, newEnd, replacement);
+      NavigableMap<Integer, Integer> offsetsCopy = new TreeMap<>();
+      offsets.subMap(Integer.MIN_VALUE, true, end, false)
+          .entrySet()
+          .stream()
+          .forEach(entry -> offsetsCopy.put(entry.getKey(), entry.getValue()));
+      offsetsCopy.put(end, newStart + replacementLength);
+      offsets.subMap(end, false, Integer.MAX_VALUE, true)
+          .entrySet()
+          .stream()
+          .forEach(entry -> offsetsCopy.put(entry.getKey(), entry.getValue() + delta));
+      return offsetsCopy;
+    }
+
     private final NavigableMap<Integer, Integer> offsets;
 
     private final String string;
@@ -534,6 +573,16 @@ public class HaplotypeGenerator {
       this.offsets = offsets;
     }
 
+    /**
+     * The haplotype in which {@code call} takes the allele of the haplotype with index
+     * {@code allele}.
+     */
+    Haplotype apply(Call call, int allele) {
+      StringBuilder newString = new StringBuilder(string);
+      NavigableMap<Integer, Integer> newOffsets = replace(newString, offsets, call, allele);
+      return new Haplotype(newString.toString(), newOffsets);
+    }
+
     Stream<Haplotype> apply(List<Call> calls) {
       getProperty(calls, Call::phaseset, "All calls must belong to the same phaseset").orElseGet(
           () -> {
@@ -545,37 +594,9 @@ public class HaplotypeGenerator {
           "Calls in same phaseset has different number of alleles"), allele = 0;
           allele < numAlleles; ++allele) {
         StringBuilder newString = new StringBuilder(string);
-        NavigableMap<Integer, Integer> newOffsets = new TreeMap<>();
-        newOffsets.putAll(offsets);
+        NavigableMap<Integer, Integer> newOffsets = offsets;
         for (Call call : calls) {
-          String
-              reference = call.reference(),
-              replacement = Stream
-                  .concat(Stream.of(reference), call.alternates().stream())
-                  .map(CaseNormalizer::normalizeCase)
-                  .collect(Collectors.toList())
-                  .get(call.genotype().get(allele));
-          int referenceLength = reference.length(),
-              replacementLength = replacement.length(),
-              delta = replacementLength - referenceLength,
-              start = call.position(),
-              end = start + referenceLength;
-          Map.Entry<Integer, Integer> floor = newOffsets.floorEntry(start);
-          int newStart = start + floor.getValue() - floor.getKey(),
-              newEnd = newStart + referenceLength;
-          assert newString.substring(newStart, newEnd).equals(reference);
-          newString.replace(newStart, newEnd, replacement);
-          NavigableMap<Integer, Integer> offsetsCopy = new TreeMap<>();
-          newOffsets.subMap(Integer.MIN_VALUE, true, end, false)
-              .entrySet()
-              .stream()
-              .forEach(entry -> offsetsCopy.put(entry.getKey(), entry.getValue()));
-          offsetsCopy.put(end, newStart + replacementLength);
-          newOffsets.subMap(end, false, Integer.MAX_VALUE, true)
-              .entrySet()
-              .stream()
-              .forEach(entry -> offsetsCopy.put(entry.getKey(), entry.getValue() + delta));
-          newOffsets = offsetsCopy;
+          newOffsets = replace(newString, newOffsets, call, allele);
         }
         haplotypes.add(new Haplotype(newString.toString(), newOffsets));
       }
@@ -599,6 +620,80 @@ public class HaplotypeGenerator {
     }
   }
 
+  /**
+   * The haplotypes generated by a set of calls, built up one call at a time. Each haplotype
+   * remembers which allele every phaseset it has seen took, so that the later calls of the same
+   * phaseset take the same one. Adding a call to the haplotypes of a set of calls gives exactly the
+   * haplotypes that {@link #generateHaplotypes} would generate for the set with that call added,
+   * without starting over from the reference, and likewise fails if the calls of a phaseset don't
+   * all have the same number of alleles.
+   */
+  static class Haplotypes {
+
+    static Haplotypes create(FastaReader.FastaFile reference, String contig, int beginning,
+        int end) {
+      return new Haplotypes(
+          Collections.singletonList(
+              Haplotype.create(reference.get(contig, beginning, end), beginning)),
+          Collections.singletonList(Collections.emptyMap()),
+          Collections.emptyMap());
+    }
+
+    private final List<Map<Call.Phaseset, Integer>> alleles;
+    private final List<Haplotype> haplotypes;
+    private final Map<Call.Phaseset, Integer> ploidies;
+
+    private Haplotypes(List<Haplotype> haplotypes, List<Map<Call.Phaseset, Integer>> alleles,
+        Map<Call.Phaseset, Integer> ploidies) {
+      this.haplotypes = haplotypes;
+      this.alleles = alleles;
+      this.ploidies = ploidies;
+    }
+
+    Haplotypes add(Call call) {
+      Optional<Call.Phaseset> phaseset = call.phaseset();
+      int ploidy = call.genotype().size();
+      Map<Call.Phaseset, Integer> newPloidies = ploidies;
+      if (phaseset.isPresent()) {
+        Integer phasesetPloidy = ploidies.get(phaseset.get());
+        if (null == phasesetPloidy) {
+          newPloidies = new HashMap<>(ploidies);
+          newPloidies.put(phaseset.get(), ploidy);
+        } else {
+          Preconditions.checkState(phasesetPloidy == ploidy,
+              "Calls in same phaseset has different number of alleles");
+        }
+      }
+      List<Haplotype> newHaplotypes = new ArrayList<>();
+      List<Map<Call.Phaseset, Integer>> newAlleles = new ArrayList<>();
+      for (int i = 0; i < haplotypes.size(); ++i) {
+        Haplotype haplotype = haplotypes.get(i);
+        Map<Call.Phaseset, Integer> taken = alleles.get(i);
+        Integer phasesetAllele = phaseset.map(taken::get).orElse(null);
+        if (null == phasesetAllele) {
+          for (int allele = 0; allele < ploidy; ++allele) {
+            newHaplotypes.add(haplotype.apply(call, allele));
+            if (phaseset.isPresent()) {
+              Map<Call.Phaseset, Integer> newTaken = new HashMap<>(taken);
+              newTaken.put(phaseset.get(), allele);
+              newAlleles.add(newTaken);
+            } else {
+              newAlleles.add(taken);
+            }
+          }
+        } else {
+          newHaplotypes.add(haplotype.apply(call, phasesetAllele));
+          newAlleles.add(taken);
+        }
+      }
+      return new Haplotypes(newHaplotypes, newAlleles, newPloidies);
+    }
+
+    Set<String> strings() {
+      return haplotypes.stream().map(Object::toString).collect(Collectors.toSet());
+    }
+  }
+
   public static Set<String> generateHaplotypes(FastaReader.FastaFile reference, String contig,
       List<Call> calls, int beginning, int end) {
     Stream<Haplotype> haplotypes =
@@ -612,6 +707,22 @@ public class HaplotypeGenerator {
         .collect(Collectors.toSet());
   }
 
+  /**
+   * How many haplotypes {@link #generateHaplotypes} produces for {@code calls} before removing the
+   * duplicates: one for each allele of each phaseset, in every combination. Saturates at
+   * {@link Long#MAX_VALUE}.
+   */
+  static long haplotypeCount(List<Call> calls) {
+    long count = 1;
+    for (List<Call> phaseset : partitionByPhaseset(calls)) {
+      int alleles = phaseset.get(0).genotype().size();
+      if (0 != alleles) {
+        count = Long.MAX_VALUE / alleles < count ? Long.MAX_VALUE : count * alleles;
+      }
+    }
+    return count;
+  }
+
   static List<List<Call>> partitionByPhaseset(List<Call> calls) {
     Stream.Builder<Stream.Builder<Call>> partition = Stream.builder();
     Map<Call.Phaseset, Stream.Builder<Call>> bucketCache = new HashMap<>();
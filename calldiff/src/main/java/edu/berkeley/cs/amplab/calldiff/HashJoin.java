@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Matches up the calls that are identical on both sides without sorting either of them. The left
+ * hand calls are put in a hash table, keyed by their contig, position and a hash of their alleles,
+ * genotype and phaseset packed into a {@code long}, and the right hand calls are streamed through
+ * it. Each right hand call that equals a left hand call still in the table takes it out, and the
+ * pair is reported as an {@link OutputTuple.Resolution#IDENTICAL} window of its own. Only the calls
+ * left over on either side need to be sorted and compared a window at a time.
+ */
+public class HashJoin {
+
+  /**
+   * Compare {@code lhs} and {@code rhs}, in any order. The exact matches are found with the hash
+   * table, and the calls that are left over are handed to {@code residuals}, unsorted, to be
+   * compared the usual way. The statistics of both are merged.
+   */
+  public static DiffStats calldiff(Stream<Call> lhs, Stream<Call> rhs,
+      BiFunction<? super Stream<Call>, ? super Stream<Call>, DiffStats> residuals) {
+    Map<String, Integer> contigs = new HashMap<>();
+    Map<Long, List<Call>> table = new HashMap<>();
+    lhs.forEach(call -> table
+        .computeIfAbsent(
+            key(contigs.computeIfAbsent(call.contig(), contig -> contigs.size()), call),
+            key -> new ArrayList<>(1))
+        .add(call));
+    Collector<OutputTuple, DiffStats.Builder, DiffStats> collector = DiffStats.builder();
+    DiffStats.Builder exactMatches = collector.supplier().get();
+    List<Call> rhsResiduals = new ArrayList<>();
+    rhs.forEach(call -> {
+          Integer contig = contigs.get(call.contig());
+          List<Call> candidates = null == contig
+              ? Collections.emptyList()
+              : table.getOrDefault(key(contig, call), Collections.emptyList());
+          for (Iterator<Call> iterator = candidates.iterator(); iterator.hasNext();) {
+            Call candidate = iterator.next();
+            if (candidate.equals(call)) {
+              iterator.remove();
+              collector.accumulator().accept(exactMatches, exactMatch(candidate, call));
+              return;
+            }
+          }
+          rhsResiduals.add(call);
+        });
+    return DiffStats.merge(Arrays.asList(
+        collector.finisher().apply(exactMatches),
+        residuals.apply(
+            table.values().stream().flatMap(List::stream),
+            rhsResiduals.stream())));
+  }
+
+  private static OutputTuple exactMatch(Call lhs, Call rhs) {
+    return OutputTuple
+        .builder(Window.create(
+            lhs.contig(),
+            lhs.position(),
+            lhs.end(),
+            new ArrayList<>(Collections.singletonList(lhs)),
+            new ArrayList<>(Collections.singletonList(rhs))))
+        .setResolution(OutputTuple.Resolution.IDENTICAL)
+        .addMatchingLhs(Collections.singletonList(lhs))
+        .addMatchingRhs(Collections.singletonList(rhs))
+        .build();
+  }
+
+  /**
+   * The key of {@code call} in the hash table: the index of its contig in the top 16 bits, its
+   * position in the next 32, and a hash of the rest of the call in the bottom 16. Calls with the
+   * same key still have to be compared to tell whether they are equal.
+   */
+  private static long key(int contig, Call call) {
+    return (long) contig << 48
+        | (call.position() & 0xFFFFFFFFL) << 16
+        | Objects.hash(call.reference(), call.alternates(), call.genotype(), call.phaseset())
+            & 0xFFFF;
+  }
+}
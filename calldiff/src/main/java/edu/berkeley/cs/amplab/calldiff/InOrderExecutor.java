@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.AbstractIterator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Applies a function to the elements of a stream on an {@link ExecutorService}, and hands the
+ * results back in the order of the input. The input is consumed on the calling thread, and at most
+ * {@code maxInFlight} elements are submitted ahead of the result the consumer is waiting on, so a
+ * slow element holds up the output but never lets the pending results grow without bound.
+ */
+public class InOrderExecutor {
+
+  public static InOrderExecutor create(ExecutorService executor, int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException(
+          String.format("maxInFlight must be positive, was %d", maxInFlight));
+    }
+    return new InOrderExecutor(executor, maxInFlight);
+  }
+
+  private final ExecutorService executor;
+  private final int maxInFlight;
+
+  private InOrderExecutor(ExecutorService executor, int maxInFlight) {
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Lazily map {@code function} over {@code input}. The futures are kept in a queue in submission
+   * order, so the head of the queue is always the next result to return. Closing the returned
+   * stream cancels whatever is still in flight.
+   */
+  public <X, Y> Stream<Y> map(Stream<? extends X> input,
+      Function<? super X, ? extends Y> function) {
+    Iterator<? extends X> iterator = input.iterator();
+    Deque<Future<Y>> inFlight = new ArrayDeque<>(maxInFlight);
+    return StreamSupport
+        .stream(
+            Spliterators.spliteratorUnknownSize(
+                new AbstractIterator<Y>() {
+                  @Override protected Y computeNext() {
+                    while (inFlight.size() < maxInFlight && iterator.hasNext()) {
+                      X next = iterator.next();
+                      inFlight.addLast(executor.submit(() -> function.apply(next)));
+                    }
+                    return inFlight.isEmpty()
+                        ? endOfData()
+                        : ExceptionWrapper.getUnchecked(inFlight.removeFirst());
+                  }
+                },
+                Spliterator.ORDERED),
+            false)
+        .onClose(() -> {
+              for (Future<Y> future : inFlight) {
+                future.cancel(true);
+              }
+              input.close();
+            });
+  }
+}
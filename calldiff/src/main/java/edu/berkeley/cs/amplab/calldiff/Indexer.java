@@ -43,16 +43,24 @@ public class Indexer<X> implements Collector<X, Indexer<X>, Map<X, Integer>> {
   private Indexer() {}
 
   @Override public BiConsumer<Indexer<X>, X> accumulator() {
-    return (indexer, object) -> indexer.map.put(object, index++);
+    return (indexer, object) -> indexer.map.put(object, indexer.index++);
   }
 
   @Override public Set<Collector.Characteristics> characteristics() {
     return Collections.emptySet();
   }
 
+  /**
+   * The objects indexed by {@code rhs} come after all the objects indexed by {@code lhs}, so their
+   * indices are shifted by the number of objects that {@code lhs} has seen.
+   */
   @Override public BinaryOperator<Indexer<X>> combiner() {
     return (lhs, rhs) -> {
-      throw new UnsupportedOperationException();
+      for (Map.Entry<X, Integer> entry : rhs.map.entrySet()) {
+        lhs.map.put(entry.getKey(), lhs.index + entry.getValue());
+      }
+      lhs.index += rhs.index;
+      return lhs;
     };
   }
 
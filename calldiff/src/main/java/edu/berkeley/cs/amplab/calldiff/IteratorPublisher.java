@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Flow.Publisher} that pulls items from an {@link Iterator} only as fast as its subscriber
+ * asks for them, so that a lazy source such as {@link Window#partition} is never read further
+ * ahead than the downstream stages can absorb.
+ */
+public class IteratorPublisher<T> extends AbstractPublisher<T> {
+
+  public static <T> IteratorPublisher<T> create(Iterator<? extends T> iterator,
+      Executor executor) {
+    return new IteratorPublisher<>(iterator, executor);
+  }
+
+  private final Iterator<? extends T> iterator;
+
+  private IteratorPublisher(Iterator<? extends T> iterator, Executor executor) {
+    super(executor);
+    this.iterator = iterator;
+  }
+
+  @Override
+  protected void drain() {
+    while (wantsMore()) {
+      if (!iterator.hasNext()) {
+        complete();
+        return;
+      }
+      emit(iterator.next());
+    }
+  }
+}
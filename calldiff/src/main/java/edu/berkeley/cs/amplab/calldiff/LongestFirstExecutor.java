@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size thread pool that, whenever a thread becomes free, runs the queued task with the
+ * highest estimated cost next. Scheduling the longest tasks first keeps a few very expensive
+ * tasks from being started last and determining the total running time on their own. Tasks with
+ * the same cost run in the order they were submitted.
+ */
+public class LongestFirstExecutor {
+
+  private static class Task<X> extends FutureTask<X> {
+
+    static final Comparator<Runnable> COMPARATOR = Comparator
+        .comparingDouble((Runnable task) -> ((Task<?>) task).cost)
+        .reversed()
+        .thenComparingLong(task -> ((Task<?>) task).sequenceNumber);
+
+    private final double cost;
+    private final long sequenceNumber;
+
+    Task(Callable<X> callable, double cost, long sequenceNumber) {
+      super(callable);
+      this.cost = cost;
+      this.sequenceNumber = sequenceNumber;
+    }
+  }
+
+  public static LongestFirstExecutor create(int threads, String nameFormat) {
+    return new LongestFirstExecutor(threads, nameFormat);
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong sequenceNumbers = new AtomicLong();
+
+  private LongestFirstExecutor(int threads, String nameFormat) {
+    this.executor = new ThreadPoolExecutor(
+        threads,
+        threads,
+        0,
+        TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(11, Task.COMPARATOR),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat(nameFormat)
+            .build());
+  }
+
+  public void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+  public <X> Future<X> submit(Callable<X> callable, double cost) {
+    Task<X> task = new Task<>(callable, cost, sequenceNumbers.getAndIncrement());
+    executor.execute(task);
+    return task;
+  }
+}
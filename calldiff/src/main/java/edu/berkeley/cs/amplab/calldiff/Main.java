@@ -22,6 +22,7 @@ import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.extensions.java6.auth.oauth2.GooglePromptReceiver;
 import com.google.cloud.genomics.utils.GenomicsFactory;
 import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.File;
 import java.io.IOException;
@@ -31,6 +32,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -131,37 +136,99 @@ public class Main {
   public static void main(String[] args) throws Exception {
     try {
       CommandLine.parse(args).ifPresent(commandLine -> {
+        if (commandLine.repeatIndex().isPresent() && WindowSpan.TANDEM_REPEAT
+            != commandLine.windowSpan().orElse(WindowSpan.DISTANCE)) {
+          throw new IllegalStateException("--repeat_index requires --window_span=TANDEM_REPEAT");
+        }
+        if (commandLine.candidateSearch().orElse(null)
+                == WindowEvaluator.CandidateSearch.FINGERPRINT_JOIN
+            && (commandLine.haplotypeEngine().isPresent()
+                || commandLine.candidateThreads().isPresent())) {
+          throw new IllegalStateException("--candidate_search=FINGERPRINT_JOIN can't be combined "
+              + "with --haplotype_engine or --candidate_threads");
+        }
         try {
           System.out.println(fastaReader(commandLine.referenceFasta(), commandLine.referenceFai())
-              .read(reference -> {
+              .read((FastaReader.Callback<DiffStats>) reference -> {
+                int candidateThreads = commandLine.candidateThreads().orElse(1);
+                Optional<ExecutorService> candidateExecutor = 1 < candidateThreads
+                    ? Optional.of(Executors.newFixedThreadPool(
+                        candidateThreads,
+                        new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("calldiff-candidate-%d")
+                            .build()))
+                    : Optional.empty();
+                WindowEvaluator.Builder evaluator = WindowEvaluator.builder(reference)
+                    .setCandidateSearch(commandLine.candidateSearch()
+                        .orElse(WindowEvaluator.CandidateSearch.PAIRWISE))
+                    .setHaplotypeEngine(
+                        commandLine.haplotypeEngine().orElse(HaplotypeEngine.ENUMERATE))
+                    .setMaxWindowSize(commandLine.maxWindowSize()
+                        .orElse(WindowEvaluator.DEFAULT_MAX_WINDOW_SIZE))
+                    .setSplitExactMatches(commandLine.splitExactMatches())
+                    .setWindowSpan(commandLine.windowSpan().orElse(WindowSpan.DISTANCE));
+                int threads =
+                    commandLine.threads().orElse(Runtime.getRuntime().availableProcessors());
+                commandLine.repeatIndex().map(File::new).ifPresent(file ->
+                    evaluator.setRepeatIndex(repeatIndex(file, reference, threads)));
+                WindowBudget.Builder budget = WindowBudget.builder();
+                commandLine.maxCandidates().ifPresent(budget::setMaxCandidates);
+                commandLine.maxHaplotypes().ifPresent(budget::setMaxHaplotypes);
+                commandLine.maxWindowMillis()
+                    .ifPresent(millis -> budget.setMaxTime(millis, TimeUnit.MILLISECONDS));
+                evaluator.setBudget(budget.build());
+                candidateExecutor.ifPresent(
+                    executor -> evaluator.setCandidateExecutor(executor, candidateThreads));
+                RingBuffer.WaitStrategy waitStrategy =
+                    commandLine.waitStrategy().orElse(RingBuffer.WaitStrategy.PARK);
+                UnaryOperator<CallScanner> normalize = scanner -> commandLine.normalize()
+                    ? NormalizingCallScanner.create(scanner, reference)
+                    : scanner;
                 try {
-                  return callScanner(
-                          "lhs",
-                          commandLine,
-                          commandLine.lhsVcf(),
-                          commandLine.lhsSampleId(),
-                          commandLine.lhsCallsetId())
+                  return BufferedCallScanner
+                      .create(
+                          normalize.apply(callScanner(
+                              "lhs",
+                              commandLine,
+                              commandLine.lhsVcf(),
+                              commandLine.lhsSampleId(),
+                              commandLine.lhsCallsetId())),
+                          waitStrategy)
                       .scan((CallScanner.Callback<DiffStats>) lhs -> {
                         try {
                           boolean presorted = commandLine.presorted();
-                          return callScanner(
-                                  "rhs",
-                                  commandLine,
-                                  commandLine.rhsVcf(),
-                                  commandLine.rhsSampleId(),
-                                  commandLine.rhsCallsetId())
-                              .scan(rhs -> OutputTuple
-                                  .calldiff(
-                                      reference,
-                                      presorted ? lhs : sort(lhs),
-                                      presorted ? rhs : sort(rhs))
-                                  .collect(DiffStats.builder()));
+                          return BufferedCallScanner
+                              .create(
+                                  normalize.apply(callScanner(
+                                      "rhs",
+                                      commandLine,
+                                      commandLine.rhsVcf(),
+                                      commandLine.rhsSampleId(),
+                                      commandLine.rhsCallsetId())),
+                                  waitStrategy)
+                              .scan(rhs -> {
+                                    ExecutionMode executionMode = commandLine.executionMode()
+                                        .orElse(ExecutionMode.SEQUENTIAL);
+                                    WindowEvaluator windowEvaluator = evaluator.build();
+                                    return presorted
+                                        ? executionMode.calldiff(windowEvaluator, lhs, rhs, threads)
+                                        : commandLine.hashJoin()
+                                            ? HashJoin.calldiff(lhs, rhs,
+                                                (lhsResiduals, rhsResiduals) -> executionMode
+                                                    .calldiff(windowEvaluator, sort(lhsResiduals),
+                                                        sort(rhsResiduals), threads))
+                                            : executionMode.calldiff(
+                                                windowEvaluator, sort(lhs), sort(rhs), threads);
+                                  });
                         } catch (GeneralSecurityException | IOException e) {
                           throw ExceptionWrapper.wrap(e);
                         }
                       });
                 } catch (GeneralSecurityException | IOException e) {
                   throw ExceptionWrapper.wrap(e);
+                } finally {
+                  candidateExecutor.ifPresent(ExecutorService::shutdownNow);
                 }
               }));
         } catch (Exception e) {
@@ -173,6 +240,21 @@ public class Main {
     }
   }
 
+  /**
+   * Memory-map the repeat index in {@code file}, or build it from {@code reference} and write it
+   * there if there isn't one yet.
+   */
+  private static RepeatIndex repeatIndex(File file, FastaReader.FastaFile reference, int threads) {
+    try {
+      if (file.exists()) {
+        return RepeatIndex.read(file, reference);
+      }
+      return RepeatIndex.create(reference, threads).write(file);
+    } catch (IOException e) {
+      throw ExceptionWrapper.wrap(e);
+    }
+  }
+
   private static Stream<Call> sort(Stream<Call> stream) {
     return sort(stream, COMPARATOR);
   }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} that applies a function to each item on its own executor. It asks
+ * upstream for at most {@code capacity} items more than it has handed on, and only applies the
+ * function when the downstream subscriber wants another result, so a slow downstream stage (or a
+ * slow function) throttles everything upstream instead of letting items pile up.
+ */
+public class MappingProcessor<T, R> extends AbstractPublisher<R> implements Flow.Processor<T, R> {
+
+  public static <T, R> MappingProcessor<T, R> create(Function<? super T, ? extends R> function,
+      Executor executor, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+          String.format("capacity must be positive, was %d", capacity));
+    }
+    return new MappingProcessor<>(function, executor, capacity);
+  }
+
+  private final int capacity;
+  private final AtomicInteger depth = new AtomicInteger(), maxDepth = new AtomicInteger();
+  private final Function<? super T, ? extends R> function;
+  private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+  private volatile Flow.Subscription upstream;
+  private volatile boolean upstreamDone = false;
+
+  private MappingProcessor(Function<? super T, ? extends R> function, Executor executor,
+      int capacity) {
+    super(executor);
+    this.function = function;
+    this.capacity = capacity;
+  }
+
+  @Override
+  protected void drain() {
+    while (true) {
+      boolean finished = upstreamDone;
+      if (queue.isEmpty()) {
+        if (finished) {
+          complete();
+        }
+        return;
+      }
+      if (!wantsMore()) {
+        return;
+      }
+      T item = queue.poll();
+      depth.decrementAndGet();
+      emit(function.apply(item));
+      upstream.request(1);
+    }
+  }
+
+  /**
+   * The largest number of items that have been waiting in this stage's buffer at once.
+   */
+  public int maxQueueDepth() {
+    return maxDepth.get();
+  }
+
+  @Override
+  protected void onCancel() {
+    Flow.Subscription upstream = this.upstream;
+    if (null != upstream) {
+      upstream.cancel();
+    }
+    queue.clear();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    schedule();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    failLater(throwable);
+  }
+
+  @Override
+  public void onNext(T item) {
+    queue.offer(item);
+    maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+    schedule();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (null != upstream) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    subscription.request(capacity);
+  }
+
+  /**
+   * The number of items waiting in this stage's buffer for the downstream subscriber to ask for
+   * them.
+   */
+  public int queueDepth() {
+    return depth.get();
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link CallScanner} decorator that left-normalizes the calls the underlying scanner produces,
+ * the same way as {@code normalize_vcf.py} in SMaSH. The suffix that all the alleles of a call
+ * share is trimmed, keeping at least one base of each, and the call is then slid to the left for
+ * as long as all its alleles end with the same base. Different representations of the same indel
+ * thereby become identical calls, which can match exactly instead of through a search.
+ *
+ * <p>Only calls whose alleles are all made up of the bases {@code ACGT} are normalized, and each
+ * call is slid at most {@code MAX_SHIFT} bases. Sliding a call can move it in front of calls that
+ * precede it in the input, so the normalized calls are held back until no later call can move
+ * in front of them, which keeps a sorted input sorted.
+ */
+public class NormalizingCallScanner implements CallScanner {
+
+  private static final Pattern ALLELE_PATTERN = Pattern.compile("[ACGT]+");
+
+  private static final Comparator<Call> COMPARATOR = Comparator.comparingInt(Call::position);
+
+  static final int MAX_SHIFT = 1000;
+
+  private static Call call(Call call, int position, String reference, List<String> alternates) {
+    return new Call() {
+
+          @Override public List<String> alternates() {
+            return alternates;
+          }
+
+          @Override public String contig() {
+            return call.contig();
+          }
+
+          @Override public boolean equals(Object obj) {
+            return HASH_CODE_AND_EQUALS.equals(this, obj);
+          }
+
+          @Override public List<Integer> genotype() {
+            return call.genotype();
+          }
+
+          @Override public int hashCode() {
+            return HASH_CODE_AND_EQUALS.hashCode(this);
+          }
+
+          @Override public Optional<Phaseset> phaseset() {
+            return call.phaseset();
+          }
+
+          @Override public int position() {
+            return position;
+          }
+
+          @Override public String reference() {
+            return reference;
+          }
+
+          @Override public String toString() {
+            return TO_STRING.apply(this);
+          }
+        };
+  }
+
+  private static List<String> chop(List<String> alleles, int suffixLength) {
+    return alleles.stream()
+        .map(allele -> allele.substring(0, allele.length() - suffixLength))
+        .collect(Collectors.toList());
+  }
+
+  public static NormalizingCallScanner create(CallScanner delegate,
+      FastaReader.FastaFile reference) {
+    return new NormalizingCallScanner(delegate, reference);
+  }
+
+  /**
+   * Left-normalize {@code call} against {@code reference}. The call itself is returned if it is
+   * already normalized, or can't be, as is a call whose alleles are all the same, which would
+   * otherwise slide all the way.
+   */
+  public static Call normalize(FastaReader.FastaFile reference, Call call) {
+    List<String> alleles = new ArrayList<>(call.alternates().size() + 1);
+    alleles.add(call.reference());
+    alleles.addAll(call.alternates());
+    String contig = call.contig();
+    if (alleles.size() < 2
+        || alleles.stream().distinct().count() < 2
+        || !alleles.stream().allMatch(allele -> ALLELE_PATTERN.matcher(allele).matches())
+        || 0 == reference.contigLength(contig)) {
+      return call;
+    }
+    int position = call.position(), trimmed = 0,
+        minLength = alleles.stream().mapToInt(String::length).min().getAsInt();
+    while (trimmed < minLength - 1 && sameBase(alleles, trimmed)) {
+      ++trimmed;
+    }
+    if (0 < trimmed) {
+      alleles = chop(alleles, trimmed);
+    }
+    int shift = 0;
+    if (0 < position && sameBase(alleles, 0)) {
+      // Sliding the alleles by a base drops their last base and prepends the one before them, so
+      // each allele slid by k bases is the window of its length k bases into flank + allele.
+      String flank = reference.get(contig, Math.max(0, position - MAX_SHIFT), position);
+      List<String> extended = alleles.stream()
+          .map(allele -> flank + allele)
+          .collect(Collectors.toList());
+      while (shift < flank.length() && sameBase(extended, shift)) {
+        ++shift;
+      }
+      List<String> shifted = new ArrayList<>(alleles.size());
+      for (int i = 0; i < alleles.size(); ++i) {
+        int begin = flank.length() - shift;
+        shifted.add(extended.get(i).substring(begin, begin + alleles.get(i).length()));
+      }
+      alleles = shifted;
+    }
+    return 0 == trimmed && 0 == shift
+        ? call
+        : call(call, position - shift, alleles.get(0), alleles.subList(1, alleles.size()));
+  }
+
+  /**
+   * Left-normalize a stream of calls with {@link #normalize(FastaReader.FastaFile, Call)}. If
+   * the calls are sorted by contig and position, so are the normalized calls.
+   */
+  public static Stream<Call> normalize(FastaReader.FastaFile reference, Stream<Call> calls) {
+    PeekingIterator<Call> iterator = Iterators.peekingIterator(calls.iterator());
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            new AbstractIterator<Call>() {
+
+              private final PriorityQueue<Call> pending = new PriorityQueue<>(COMPARATOR);
+
+              @Override protected Call computeNext() {
+                while (true) {
+                  Call next = pending.peek();
+                  if (null != next && (!iterator.hasNext() || isSettled(next, iterator.peek()))) {
+                    return pending.poll();
+                  } else if (!iterator.hasNext()) {
+                    return endOfData();
+                  }
+                  pending.add(normalize(reference, iterator.next()));
+                }
+              }
+
+              /**
+               * Whether no call from {@code next} on can be slid in front of {@code call}.
+               */
+              private boolean isSettled(Call call, Call next) {
+                return !Objects.equals(call.contig(), next.contig())
+                    || call.position() < next.position() - MAX_SHIFT;
+              }
+            },
+            Spliterator.IMMUTABLE | Spliterator.NONNULL),
+        false);
+  }
+
+  /**
+   * Whether all of {@code alleles} have the same base {@code offset} bases before their end.
+   */
+  private static boolean sameBase(List<String> alleles, int offset) {
+    String first = alleles.get(0);
+    char base = first.charAt(first.length() - 1 - offset);
+    for (String allele : alleles) {
+      if (base != allele.charAt(allele.length() - 1 - offset)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private final CallScanner delegate;
+  private final FastaReader.FastaFile reference;
+
+  private NormalizingCallScanner(CallScanner delegate, FastaReader.FastaFile reference) {
+    this.delegate = delegate;
+    this.reference = reference;
+  }
+
+  @Override
+  public <X> X scan(Callback<? extends X> callback) throws IOException {
+    return delegate.scan(calls -> callback.scan(normalize(reference, calls)));
+  }
+}
@@ -21,7 +21,8 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * Contains the output results for a single genomic window. It has four fields:
+ * Contains the output results for a single genomic window. It has four fields, and records how the
+ * window was resolved:
  *
  * <ul>
  *   <li>The calls from the left hand side that had equivalents on the right hand side</li>
@@ -43,6 +44,7 @@ public class OutputTuple {
         matchingRhs = Stream.builder(),
         notMatchingLhs = Stream.builder(),
         notMatchingRhs = Stream.builder();
+    private Resolution resolution = Resolution.SEARCH;
     private final Window window;
 
     private Builder(Window window) {
@@ -78,7 +80,72 @@ public class OutputTuple {
           toList(matchingLhs),
           toList(matchingRhs),
           toList(notMatchingLhs),
-          toList(notMatchingRhs));
+          toList(notMatchingRhs),
+          resolution);
+    }
+
+    public Builder setResolution(Resolution resolution) {
+      this.resolution = resolution;
+      return this;
+    }
+  }
+
+  /**
+   * How the calls in a window were sorted into matching and not matching. The resolutions are
+   * declared from the least to the most work, and all the unprocessed ones come last.
+   */
+  public enum Resolution {
+
+    /**
+     * Without a search: the left hand and right hand calls were identical, so they all matched.
+     */
+    IDENTICAL(true),
+
+    /**
+     * Without a search: only one side had calls, and none of them could cancel each other out, so
+     * exactly the calls that leave the reference unchanged matched.
+     */
+    ONE_SIDED(true),
+
+    /**
+     * By searching for the largest subsets of calls that generate the same haplotypes.
+     */
+    SEARCH(true),
+
+    /**
+     * They weren't: the window had too many calls to be searched, and is reported as unprocessed.
+     */
+    TOO_LARGE(false),
+
+    /**
+     * They weren't: the search tried more candidates than its {@link WindowBudget} allows, and the
+     * window is reported as unprocessed.
+     */
+    TOO_MANY_CANDIDATES(false),
+
+    /**
+     * They weren't: the search generated more haplotypes than its {@link WindowBudget} allows, and
+     * the window is reported as unprocessed.
+     */
+    TOO_MANY_HAPLOTYPES(false),
+
+    /**
+     * They weren't: the search ran for longer than its {@link WindowBudget} allows, and the window
+     * is reported as unprocessed.
+     */
+    TIMED_OUT(false);
+
+    private final boolean processed;
+
+    private Resolution(boolean processed) {
+      this.processed = processed;
+    }
+
+    /**
+     * Whether the calls of the window were sorted into matching and not matching at all.
+     */
+    public boolean isProcessed() {
+      return processed;
     }
   }
 
@@ -89,7 +156,8 @@ public class OutputTuple {
           OutputTuple::matchingLhs,
           OutputTuple::matchingRhs,
           OutputTuple::notMatchingLhs,
-          OutputTuple::notMatchingRhs);
+          OutputTuple::notMatchingRhs,
+          OutputTuple::resolution);
 
   public static Builder builder(Window window) {
     return new Builder(window);
@@ -97,13 +165,12 @@ public class OutputTuple {
 
   public static Stream<OutputTuple>
       calldiff(FastaReader.FastaFile reference, Stream<Call> lhs, Stream<Call> rhs) {
-    return Window.partition(lhs, rhs)
-        .map(window -> window.createOutputTuple(window.candidates()
-            .filter(candidates -> candidates.generatesSameSetOfHaplotypes(reference))
-            .findFirst()));
+    WindowEvaluator evaluator = WindowEvaluator.builder(reference).build();
+    return evaluator.partition(lhs, rhs).map(evaluator);
   }
 
   private final List<Call> matchingLhs, matchingRhs, notMatchingLhs, notMatchingRhs;
+  private final Resolution resolution;
   private final Window window;
 
   private OutputTuple(
@@ -111,12 +178,14 @@ public class OutputTuple {
       List<Call> matchingLhs,
       List<Call> matchingRhs,
       List<Call> notMatchingLhs,
-      List<Call> notMatchingRhs) {
+      List<Call> notMatchingRhs,
+      Resolution resolution) {
     this.window = window;
     this.matchingLhs = matchingLhs;
     this.matchingRhs = matchingRhs;
     this.notMatchingLhs = notMatchingLhs;
     this.notMatchingRhs = notMatchingRhs;
+    this.resolution = resolution;
   }
 
   @Override
@@ -145,6 +214,10 @@ public class OutputTuple {
     return notMatchingRhs;
   }
 
+  public Resolution resolution() {
+    return resolution;
+  }
+
   public Window window() {
     return window;
   }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Range;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An index of the tandem repeats of a reference, as {@link WindowSpan#TANDEM_REPEAT} defines them.
+ * Homopolymers are the repeats with a period of one. The index is built once by scanning
+ * every contig of the reference, and can be written to a file that later runs memory-map instead
+ * of scanning the reference again.
+ *
+ * <p>The file starts with the length of a header, and the header lists the name of each contig,
+ * its length and the number of repeats on it. The repeats of each contig then follow as four
+ * arrays of that many ints: their starts, their ends, the greatest end of the repeats up to each of
+ * them, and their periods. The file is only read back for a reference with the same contigs of the
+ * same lengths, and is written to a temporary file first and then renamed, so that a partly
+ * written index is never read.
+ */
+public class RepeatIndex {
+
+  /**
+   * The repeats on a single contig, sorted by start and then by end, laid out in {@code data} as
+   * they are in the file.
+   */
+  private static class Contig {
+
+    private final IntBuffer data;
+    private final int length, size;
+
+    Contig(IntBuffer data, int size, int length) {
+      this.data = data;
+      this.size = size;
+      this.length = length;
+    }
+
+    /**
+     * The number of repeats that start at or before {@code position}.
+     */
+    private int countStartingBy(int position) {
+      int lower = 0, upper = size;
+      while (lower < upper) {
+        int middle = (lower + upper) >>> 1;
+        if (start(middle) <= position) {
+          lower = middle + 1;
+        } else {
+          upper = middle;
+        }
+      }
+      return lower;
+    }
+
+    private int end(int i) {
+      return data.get(size + i);
+    }
+
+    int length() {
+      return length;
+    }
+
+    private int maxEnd(int i) {
+      return data.get(2 * size + i);
+    }
+
+    int period(int position) {
+      int period = 0;
+      for (int i = countStartingBy(position) - 1; 0 <= i && position < maxEnd(i); --i) {
+        if (position < end(i) && (0 == period || periodOf(i) < period)) {
+          period = periodOf(i);
+        }
+      }
+      return period;
+    }
+
+    private int periodOf(int i) {
+      return data.get(3 * size + i);
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * The span that {@link WindowSpan#TANDEM_REPEAT} gives a call from {@code start} to
+     * {@code end}. The repeats are clipped to the bases that it would scan, and only those that
+     * it would find from the base before the call, or from the last base of the call, count.
+     */
+    Range<Integer> span(int start, int end) {
+      int from = Math.max(0, start - WindowSpan.MAX_EXTENSION),
+          to = Math.min(length, end + WindowSpan.MAX_EXTENSION);
+      if (to <= start) {
+        return Range.closedOpen(start - 1, end + 1);
+      }
+      int stop = Math.min(end, to), lower = start, upper = stop;
+      for (int i = countStartingBy(stop - 1) - 1; 0 <= i && start < maxEnd(i); --i) {
+        int period = periodOf(i);
+        int[] repeat = { Math.max(from, start(i)), Math.min(to, end(i)) };
+        if (WindowSpan.isLongEnough(repeat, period)) {
+          if (repeat[0] <= start - 1 && start - 1 < repeat[1] - period) {
+            lower = Math.min(lower, repeat[0]);
+          }
+          if (repeat[0] <= stop - period && stop - period < repeat[1] - period) {
+            upper = Math.max(upper, repeat[1]);
+          }
+        }
+      }
+      return Range.closedOpen(lower - 1, upper + 1);
+    }
+
+    private int start(int i) {
+      return data.get(i);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      for (int i = 0; i < 4 * size; ++i) {
+        out.writeInt(data.get(i));
+      }
+    }
+  }
+
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private static final int MAGIC = 0x52455049;
+
+  private static final int VERSION = 3;
+
+  private static void addRepeat(List<int[]> repeats, int start, int end, int period) {
+    if (0 <= start && WindowSpan.isLongEnough(new int[] { start, end }, period)) {
+      repeats.add(new int[] { start, end, period });
+    }
+  }
+
+  /**
+   * Index the repeats of {@code reference}, scanning its contigs in parallel on {@code threads}
+   * threads.
+   */
+  public static RepeatIndex create(FastaReader.FastaFile reference, int threads) {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      return new RepeatIndex(ImmutableSortedMap.copyOf(pool
+          .submit(() -> reference.contigs().parallelStream()
+              .collect(Collectors.toMap(Function.identity(), contig -> scan(reference, contig))))
+          .join()));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Memory-map an index that was written with {@link #write}, checking that it was built from a
+   * reference with the same contigs as {@code reference}, of the same lengths.
+   */
+  public static RepeatIndex read(File file, FastaReader.FastaFile reference) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      try (FileChannel channel = in.getChannel()) {
+        int headerLength = in.readInt();
+        if (headerLength < 2 * Integer.BYTES || in.length() - Integer.BYTES < headerLength) {
+          throw new IOException(String.format("Not a repeat index: \"%s\"", file));
+        }
+        byte[] header = new byte[headerLength];
+        in.readFully(header);
+        DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(header));
+        if (MAGIC != headerIn.readInt() || VERSION != headerIn.readInt()) {
+          throw new IOException(String.format("Not a repeat index: \"%s\"", file));
+        }
+        ImmutableSortedMap.Builder<String, Contig> contigs = ImmutableSortedMap.naturalOrder();
+        long offset = Integer.BYTES + header.length;
+        Set<String> names = new HashSet<>();
+        for (int count = headerIn.readInt(), i = 0; i < count; ++i) {
+          String name = headerIn.readUTF();
+          int length = headerIn.readInt(), size = headerIn.readInt();
+          if (!reference.contigs().contains(name) || length != reference.contigLength(name)) {
+            throw new IOException(String.format(
+                "Repeat index \"%s\" was built from a different reference", file));
+          }
+          long bytes = 4L * size * Integer.BYTES;
+          if (channel.size() < offset + bytes) {
+            throw new IOException(String.format("Truncated repeat index: \"%s\"", file));
+          }
+          names.add(name);
+          contigs.put(name, new Contig(
+              channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes).asIntBuffer(),
+              size,
+              length));
+          offset += bytes;
+        }
+        if (!names.equals(reference.contigs())) {
+          throw new IOException(String.format(
+              "Repeat index \"%s\" was built from a different reference", file));
+        }
+        return new RepeatIndex(contigs.build());
+      }
+    }
+  }
+
+  private static Contig scan(FastaReader.FastaFile reference, String contig) {
+    List<int[]> repeats = new ArrayList<>();
+    int length = reference.contigLength(contig);
+    int[] runStarts = new int[WindowSpan.MAX_PERIOD + 1];
+    Arrays.fill(runStarts, -1);
+    for (int chunk = 0; chunk < length; chunk += CHUNK_SIZE) {
+      String bases = reference
+          .get(contig, chunk, Math.min(length, chunk + CHUNK_SIZE + WindowSpan.MAX_PERIOD))
+          .toUpperCase();
+      for (int period = 1; period <= WindowSpan.MAX_PERIOD; ++period) {
+        for (int i = 0, end = Math.min(CHUNK_SIZE, bases.length() - period); i < end; ++i) {
+          if (WindowSpan.repeats(bases, i, period)) {
+            if (runStarts[period] < 0) {
+              runStarts[period] = chunk + i;
+            }
+          } else {
+            addRepeat(repeats, runStarts[period], chunk + i + period, period);
+            runStarts[period] = -1;
+          }
+        }
+      }
+    }
+    for (int period = 1; period <= WindowSpan.MAX_PERIOD; ++period) {
+      addRepeat(repeats, runStarts[period], length, period);
+    }
+    // A repeat of a period also repeats with every multiple of that period, so keep only the
+    // shortest period of the repeats that span the same bases.
+    repeats.sort(Comparator
+        .<int[]>comparingInt(repeat -> repeat[0])
+        .thenComparingInt(repeat -> repeat[1])
+        .thenComparingInt(repeat -> repeat[2]));
+    List<int[]> distinct = new ArrayList<>(repeats.size());
+    for (int[] repeat : repeats) {
+      int[] previous = distinct.isEmpty() ? null : distinct.get(distinct.size() - 1);
+      if (null == previous || previous[0] != repeat[0] || previous[1] != repeat[1]) {
+        distinct.add(repeat);
+      }
+    }
+    int size = distinct.size(), maxEnd = Integer.MIN_VALUE;
+    IntBuffer data = IntBuffer.allocate(4 * size);
+    for (int i = 0; i < size; ++i) {
+      int[] repeat = distinct.get(i);
+      maxEnd = Math.max(maxEnd, repeat[1]);
+      data.put(i, repeat[0]);
+      data.put(size + i, repeat[1]);
+      data.put(2 * size + i, maxEnd);
+      data.put(3 * size + i, repeat[2]);
+    }
+    return new Contig(data, size, length);
+  }
+
+  private final Map<String, Contig> contigs;
+
+  private RepeatIndex(Map<String, Contig> contigs) {
+    this.contigs = contigs;
+  }
+
+  /**
+   * The shortest period of the repeats that cover {@code position}, or zero if none do.
+   */
+  public int period(String contig, int position) {
+    return Optional.ofNullable(contigs.get(contig))
+        .map(repeats -> repeats.period(position))
+        .orElse(0);
+  }
+
+  /**
+   * The total number of repeats in the index.
+   */
+  public long size() {
+    return contigs.values().stream().mapToLong(Contig::size).sum();
+  }
+
+  /**
+   * The span that {@link WindowSpan#TANDEM_REPEAT} gives {@code call}, except that only the
+   * repeats in this index are taken into account.
+   */
+  public Range<Integer> span(Call call) {
+    int start = call.position(), end = Math.max(start, call.end());
+    return Optional.ofNullable(contigs.get(call.contig()))
+        .map(repeats -> repeats.span(start, end))
+        .orElse(Range.closedOpen(start - 1, end + 1));
+  }
+
+  public RepeatIndex write(File file) throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    try (DataOutputStream headerOut = new DataOutputStream(header)) {
+      headerOut.writeInt(MAGIC);
+      headerOut.writeInt(VERSION);
+      headerOut.writeInt(contigs.size());
+      for (Map.Entry<String, Contig> entry : contigs.entrySet()) {
+        headerOut.writeUTF(entry.getKey());
+        headerOut.writeInt(entry.getValue().length());
+        headerOut.writeInt(entry.getValue().size());
+      }
+    }
+    File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(header.size());
+        header.writeTo(out);
+        for (Contig contig : contigs.values()) {
+          contig.write(out);
+        }
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+    return this;
+  }
+}
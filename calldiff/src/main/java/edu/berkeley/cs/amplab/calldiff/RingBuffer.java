@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated queue for handing items from exactly one producer thread to exactly one
+ * consumer thread without locks. Each side only ever writes its own index, and publishes it with an
+ * ordered store, so a handoff costs a couple of memory barriers rather than a lock acquisition.
+ * What a side does while the buffer is full or empty is decided by a {@link WaitStrategy}.
+ */
+public class RingBuffer<X> {
+
+  /**
+   * What a thread does while it waits for room in, or for an item from, the buffer.
+   */
+  public enum WaitStrategy {
+
+    /**
+     * Spin for a while, and then park for short intervals. Waiting threads use little CPU, at the
+     * cost of some latency when the other side catches up.
+     */
+    PARK {
+      @Override void idle(int attempt) {
+        if (SPINS_BEFORE_PARKING <= attempt) {
+          LockSupport.parkNanos(PARK_NANOS);
+        }
+      }
+    },
+
+    /**
+     * Busy-spin without ever giving up the processor. This gives the lowest latency, but keeps one
+     * core busy per waiting thread, so it only makes sense when there are cores to spare.
+     */
+    SPIN {
+      @Override void idle(int attempt) {}
+    };
+
+    private static final long PARK_NANOS = 50_000;
+
+    private static final int SPINS_BEFORE_PARKING = 100;
+
+    abstract void idle(int attempt);
+  }
+
+  /**
+   * Create a ring buffer that holds at least {@code capacity} items. The capacity is rounded up to
+   * a power of two.
+   */
+  public static <X> RingBuffer<X> create(int capacity, WaitStrategy waitStrategy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+          String.format("capacity must be positive, was %d", capacity));
+    }
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    return new RingBuffer<>(size, waitStrategy);
+  }
+
+  private static void checkInterrupted() throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private final Object[] buffer;
+  private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+  private long headCache = 0, tailCache = 0;
+  private final int mask;
+  private final WaitStrategy waitStrategy;
+
+  private RingBuffer(int size, WaitStrategy waitStrategy) {
+    this.buffer = new Object[size];
+    this.mask = size - 1;
+    this.waitStrategy = waitStrategy;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Add {@code item}, which must not be null, if there is room for it. May only be called from the
+   * producer thread.
+   */
+  public boolean offer(X item) {
+    if (null == item) {
+      throw new NullPointerException();
+    }
+    long tail = this.tail.get();
+    if (buffer.length <= tail - headCache && buffer.length <= tail - (headCache = head.get())) {
+      return false;
+    }
+    buffer[(int) tail & mask] = item;
+    this.tail.lazySet(tail + 1);
+    return true;
+  }
+
+  /**
+   * Remove and return the oldest item, or return {@code null} if there is none. May only be called
+   * from the consumer thread.
+   */
+  @SuppressWarnings("unchecked")
+  public X poll() {
+    long head = this.head.get();
+    if (tailCache <= head && (tailCache = tail.get()) <= head) {
+      return null;
+    }
+    int index = (int) head & mask;
+    X item = (X) buffer[index];
+    buffer[index] = null;
+    this.head.lazySet(head + 1);
+    return item;
+  }
+
+  /**
+   * Add {@code item}, waiting for room if necessary. May only be called from the producer thread.
+   */
+  public void put(X item) throws InterruptedException {
+    for (int attempt = 0; !offer(item); ++attempt) {
+      checkInterrupted();
+      waitStrategy.idle(attempt);
+    }
+  }
+
+  /**
+   * The number of items in the buffer. Only a snapshot, since both sides may be moving.
+   */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Remove and return the oldest item, waiting for one if necessary. May only be called from the
+   * consumer thread.
+   */
+  public X take() throws InterruptedException {
+    X item;
+    for (int attempt = 0; null == (item = poll()); ++attempt) {
+      checkInterrupted();
+      waitStrategy.idle(attempt);
+    }
+    return item;
+  }
+}
@@ -19,6 +19,7 @@ package edu.berkeley.cs.amplab.calldiff;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
@@ -34,6 +35,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -92,10 +95,12 @@ public class Window {
 
     private final Call call;
     private final Source source;
+    private final Range<Integer> span;
 
-    CallWithSource(Call call, Source source) {
+    CallWithSource(Call call, Source source, Range<Integer> span) {
       this.call = call;
       this.source = source;
+      this.span = span;
     }
 
     Call call() {
@@ -105,6 +110,84 @@ public class Window {
     Source source() {
       return source;
     }
+
+    Range<Integer> span() {
+      return span;
+    }
+  }
+
+  /**
+   * A {@link Spliterator} over a range of the merged, sorted calls from both sides. It can only
+   * be split where one window ends and the next begins, that is, at a change of contig or where
+   * the span of the next call starts past the spans of every call since the start of the window.
+   * No window can cross such a gap, so both halves produce exactly the windows that a single
+   * sequential pass would.
+   */
+  private static class PartitionSpliterator implements Spliterator<Window> {
+
+    private final List<CallWithSource> calls;
+    private int from;
+    private final int to;
+
+    PartitionSpliterator(List<CallWithSource> calls, int from, int to) {
+      this.calls = calls;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL
+          | Spliterator.ORDERED;
+    }
+
+    /**
+     * Returns the index one past the last call of the window that starts at {@code start}.
+     */
+    private int endOfWindow(int start) {
+      CallWithSource next = calls.get(start);
+      String contig = next.call().contig();
+      int reach = next.span().upperEndpoint(), i = start + 1;
+      for (; i < to
+          && Objects.equals(contig, (next = calls.get(i)).call().contig())
+          && next.span().lowerEndpoint() < reach; ++i) {
+        reach = Math.max(reach, next.span().upperEndpoint());
+      }
+      return i;
+    }
+
+    @Override public long estimateSize() {
+      return to - from;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Window> action) {
+      if (from < to) {
+        int end = endOfWindow(from);
+        Window.Builder window = Window.builder(calls.get(from).call().contig());
+        for (CallWithSource next : calls.subList(from, end)) {
+          next.source().add(window, next.call());
+        }
+        from = end;
+        Window result = window.build();
+        LOGGER.finest(String.format(
+            "Processing window [%s, %d, %d]", result.contig(), result.start(), result.end()));
+        action.accept(result);
+        return true;
+      }
+      return false;
+    }
+
+    @Override public Spliterator<Window> trySplit() {
+      int middle = (from + to) >>> 1, cut = from;
+      while (cut < middle) {
+        cut = endOfWindow(cut);
+      }
+      if (from == cut || to == cut) {
+        return null;
+      }
+      Spliterator<Window> prefix = new PartitionSpliterator(calls, from, cut);
+      from = cut;
+      return prefix;
+    }
   }
 
   private enum Source {
@@ -112,8 +195,22 @@ public class Window {
     LHS,
     RHS;
 
-    Iterator<CallWithSource> iterator(Stream<Call> calls) {
-      return calls.map(call -> new CallWithSource(call, this)).iterator();
+    void add(Window.Builder window, Call call) {
+      switch (this) {
+        case LHS:
+          window.addLhs(call);
+          break;
+        case RHS:
+          window.addRhs(call);
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+
+    Iterator<CallWithSource> iterator(Stream<Call> calls,
+        Function<? super Call, Range<Integer>> span) {
+      return calls.map(call -> new CallWithSource(call, this, span.apply(call))).iterator();
     }
   }
 
@@ -130,8 +227,6 @@ public class Window {
 
   private static final Logger LOGGER = Logger.getLogger(Window.class.getName());
 
-  private static final int MAX_WINDOW_SIZE = 10;
-
   public static Builder builder(String contig) {
     return new Builder(contig);
   }
@@ -140,47 +235,119 @@ public class Window {
     return Comparator.comparing(collection.stream().collect(Indexer.create())::get);
   }
 
+  /**
+   * An upper bound on the number of haplotypes that {@code calls} generate: every unphased
+   * heterozygous call, and every phaseset containing a heterozygous call, doubles it.
+   */
+  private static double countHaplotypes(List<Call> calls) {
+    Set<Call.Phaseset> phasesets = new HashSet<>();
+    int unphased = 0;
+    for (Call call : calls) {
+      if (1 < new HashSet<>(call.genotype()).size()) {
+        Optional<Call.Phaseset> phaseset = call.phaseset();
+        if (phaseset.isPresent()) {
+          phasesets.add(phaseset.get());
+        } else {
+          ++unphased;
+        }
+      }
+    }
+    return Math.pow(2, unphased + phasesets.size());
+  }
+
+  /**
+   * How many of the elements of {@code sorted} are less than {@code value}.
+   */
+  private static int countLessThan(int[] sorted, int value) {
+    int low = 0, high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sorted[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Roughly how many subsets of {@code calls} contain no overlapping calls: each call doubles the
+   * count, except that a call which overlaps an earlier one can't be combined with it.
+   */
+  private static double countNonOverlappingSubsets(List<Call> calls) {
+    double count = 1;
+    for (int i = 0; i < calls.size(); ++i) {
+      Call call = calls.get(i);
+      boolean overlaps = false;
+      for (int j = 0; j < i && !overlaps; ++j) {
+        overlaps = call.overlaps(calls.get(j));
+      }
+      count *= overlaps ? 1.5 : 2;
+    }
+    return count;
+  }
+
   public static Window
       create(String contig, int start, int end, ArrayList<Call> lhs, ArrayList<Call> rhs) {
     return new Window(contig, start, end, lhs, rhs);
   }
 
-  public static Stream<Window> partition(final Stream<Call> lhs, final Stream<Call> rhs) {
+  /**
+   * The span of {@code call} that {@link #partition(Stream, Stream)} uses: the call itself, plus
+   * {@code CALL_SEPERATION_DISTANCE} after its end.
+   */
+  static Range<Integer> distanceSpan(Call call) {
+    return Range.closedOpen(call.position(), call.end() + CALL_SEPERATION_DISTANCE);
+  }
+
+  /**
+   * Whether {@code span} overlaps any of a list of spans, given their lower endpoints in sorted
+   * order, and the greatest upper endpoint of the spans up to each of them.
+   */
+  private static boolean isNear(Range<Integer> span, int[] lowers, int[] maxUppers) {
+    int before = countLessThan(lowers, span.upperEndpoint());
+    return 0 < before && span.lowerEndpoint() < maxUppers[before - 1];
+  }
+
+  public static Stream<Window> partition(Stream<Call> lhs, Stream<Call> rhs) {
+    return partition(lhs, rhs, Window::distanceSpan);
+  }
+
+  /**
+   * Merge the sorted calls from both sides into windows. Each call is given a span, and a call
+   * joins the current window when its span starts before the end of the span of some call already
+   * in the window; otherwise it starts a new one. The spans only decide where the windows are
+   * cut, and the windows themselves still run from the first call to the end of the last one.
+   */
+  public static Stream<Window> partition(final Stream<Call> lhs, final Stream<Call> rhs,
+      Function<? super Call, Range<Integer>> span) {
     return StreamSupport.stream(
         Spliterators.spliteratorUnknownSize(
             new AbstractIterator<Window>() {
 
               private final PeekingIterator<CallWithSource> iterator = Iterators.peekingIterator(
                   Iterators.mergeSorted(
-                      Arrays.asList(Source.LHS.iterator(lhs), Source.RHS.iterator(rhs)),
+                      Arrays.asList(
+                          Source.LHS.iterator(lhs, span),
+                          Source.RHS.iterator(rhs, span)),
                       CallWithSource.COMPARATOR));
 
-              private void addToWindow(Window.Builder window, CallWithSource next, Call call) {
-                switch (next.source()) {
-                  case LHS:
-                    window.addLhs(call);
-                    break;
-                  case RHS:
-                    window.addRhs(call);
-                    break;
-                  default:
-                    throw new IllegalStateException();
-                }
-              }
-
               @Override protected Window computeNext() {
                 if (iterator.hasNext()) {
                   CallWithSource next = iterator.next();
                   Call call = next.call(), firstCall = call;
                   String contig = call.contig();
                   Window.Builder window = Window.builder(contig);
-                  for (addToWindow(window, next, call);
+                  next.source().add(window, call);
+                  for (int reach = next.span().upperEndpoint();
                       iterator.hasNext()
                           && Objects.equals(
                               contig,
                               (call = (next = iterator.peek()).call()).contig())
-                          && call.position() < window.end() + CALL_SEPERATION_DISTANCE;) {
-                    addToWindow(window, iterator.next(), call);
+                          && next.span().lowerEndpoint() < reach;) {
+                    iterator.next().source().add(window, call);
+                    reach = Math.max(reach, next.span().upperEndpoint());
                   }
                   LOGGER.finest(String.format(
                       "Processing window [%s, %d, %d]", contig, firstCall.position(), call.end()));
@@ -193,6 +360,32 @@ public class Window {
         false);
   }
 
+  /**
+   * Like {@link #partition(Stream, Stream)}, but over calls that have already been read into
+   * memory. The returned stream can be made {@link Stream#parallel}, in which case the windows are
+   * split off at the gaps between them and compared on the fork-join pool.
+   */
+  public static Stream<Window> partition(List<Call> lhs, List<Call> rhs) {
+    return partition(lhs, rhs, Window::distanceSpan);
+  }
+
+  /**
+   * Like {@link #partition(Stream, Stream, Function)}, but over calls that have already been read
+   * into memory, as in {@link #partition(List, List)}.
+   */
+  public static Stream<Window> partition(List<Call> lhs, List<Call> rhs,
+      Function<? super Call, Range<Integer>> span) {
+    List<CallWithSource> calls = new ArrayList<>(lhs.size() + rhs.size());
+    Iterators.addAll(
+        calls,
+        Iterators.mergeSorted(
+            Arrays.asList(
+                Source.LHS.iterator(lhs.stream(), span),
+                Source.RHS.iterator(rhs.stream(), span)),
+            CallWithSource.COMPARATOR));
+    return StreamSupport.stream(new PartitionSpliterator(calls, 0, calls.size()), false);
+  }
+
   private static <X> Set<X> set(Iterable<? extends X> iterable) {
     Set<X> set = new HashSet<>();
     for (X object : iterable) {
@@ -225,12 +418,21 @@ public class Window {
     return CandidateCalls.createCandidates(this);
   }
 
+  Stream<CandidateCalls> candidates(WindowBudget.Tracker tracker) {
+    return CandidateCalls.createCandidates(this, tracker);
+  }
+
   public String contig() {
     return contig;
   }
 
   public OutputTuple createOutputTuple(Optional<CandidateCalls> optional) {
-    OutputTuple.Builder tuple = OutputTuple.builder(this);
+    return createOutputTuple(optional, OutputTuple.Resolution.SEARCH);
+  }
+
+  public OutputTuple createOutputTuple(Optional<CandidateCalls> optional,
+      OutputTuple.Resolution resolution) {
+    OutputTuple.Builder tuple = OutputTuple.builder(this).setResolution(resolution);
     if (optional.isPresent()) {
       CandidateCalls calls = optional.get();
       List<Call>
@@ -262,15 +464,21 @@ public class Window {
     return HASH_CODE_AND_EQUALS.equals(this, obj);
   }
 
+  /**
+   * An estimate of how expensive this window is to compare, in arbitrary units. The candidate
+   * search may have to look at every pair of non-overlapping subsets of the left hand and right
+   * hand calls, and each pair costs about as much as the number of haplotypes it generates.
+   */
+  public double estimatedCost() {
+    return countNonOverlappingSubsets(lhs()) * countNonOverlappingSubsets(rhs())
+        * (countHaplotypes(lhs()) + countHaplotypes(rhs()));
+  }
+
   @Override
   public int hashCode() {
     return HASH_CODE_AND_EQUALS.hashCode(this);
   }
 
-  public boolean isTooLarge() {
-    return MAX_WINDOW_SIZE < size();
-  }
-
   public ArrayList<Call> lhs() {
     return lhs;
   }
@@ -283,6 +491,93 @@ public class Window {
     return Math.max(lhs().size(), rhs.size());
   }
 
+  /**
+   * Split this window into smaller ones by setting aside the calls that have an exact match on the
+   * other side, with the same position, alleles, genotype and phaseset, unless they are within
+   * {@code CALL_SEPERATION_DISTANCE} of a call that doesn't. The remaining calls are partitioned
+   * into windows again, and so are the calls that were set aside, which on their own make windows
+   * whose two sides are identical. The pairs are found with a merge join on position, since both
+   * sides are sorted. If either no call or every call has an exact match, this window is returned
+   * as it is.
+   */
+  public List<Window> splitExactMatches() {
+    return splitExactMatches(Window::distanceSpan);
+  }
+
+  /**
+   * Like {@link #splitExactMatches()}, for a window that was cut with {@code span}: a call with an
+   * exact match is only set aside if its span overlaps the span of no call without one, and the
+   * calls are partitioned again with {@code span}.
+   */
+  public List<Window> splitExactMatches(Function<? super Call, Range<Integer>> span) {
+    int lhsSize = lhs.size(), rhsSize = rhs.size();
+    boolean[] lhsMatched = new boolean[lhsSize], rhsMatched = new boolean[rhsSize];
+    for (int i = 0, j = 0; i < lhsSize && j < rhsSize;) {
+      int lhsPosition = lhs.get(i).position(), rhsPosition = rhs.get(j).position();
+      if (lhsPosition < rhsPosition) {
+        ++i;
+      } else if (rhsPosition < lhsPosition) {
+        ++j;
+      } else {
+        int lhsEnd = i, rhsEnd = j;
+        while (lhsEnd < lhsSize && lhsPosition == lhs.get(lhsEnd).position()) {
+          ++lhsEnd;
+        }
+        while (rhsEnd < rhsSize && rhsPosition == rhs.get(rhsEnd).position()) {
+          ++rhsEnd;
+        }
+        for (; i < lhsEnd; ++i) {
+          for (int k = j; k < rhsEnd; ++k) {
+            if (!rhsMatched[k] && lhs.get(i).equals(rhs.get(k))) {
+              lhsMatched[i] = rhsMatched[k] = true;
+              break;
+            }
+          }
+        }
+        j = rhsEnd;
+      }
+    }
+    List<Call> residuals = new ArrayList<>();
+    for (int i = 0; i < lhsSize; ++i) {
+      if (!lhsMatched[i]) {
+        residuals.add(lhs.get(i));
+      }
+    }
+    for (int j = 0; j < rhsSize; ++j) {
+      if (!rhsMatched[j]) {
+        residuals.add(rhs.get(j));
+      }
+    }
+    if (residuals.isEmpty() || lhsSize + rhsSize == residuals.size()) {
+      return Collections.singletonList(this);
+    }
+    List<Range<Integer>> spans = residuals.stream().map(span).collect(Collectors.toList());
+    Collections.sort(spans, Comparator.comparing(Range::lowerEndpoint));
+    int[] lowers = new int[spans.size()], maxUppers = new int[spans.size()];
+    for (int i = 0, maxUpper = Integer.MIN_VALUE; i < lowers.length; ++i) {
+      Range<Integer> residual = spans.get(i);
+      lowers[i] = residual.lowerEndpoint();
+      maxUppers[i] = maxUpper = Math.max(maxUpper, residual.upperEndpoint());
+    }
+    ArrayList<Call>
+        nearLhs = new ArrayList<>(),
+        nearRhs = new ArrayList<>(),
+        exactLhs = new ArrayList<>(),
+        exactRhs = new ArrayList<>();
+    for (int i = 0; i < lhsSize; ++i) {
+      Call call = lhs.get(i);
+      (!lhsMatched[i] || isNear(span.apply(call), lowers, maxUppers) ? nearLhs : exactLhs)
+          .add(call);
+    }
+    for (int j = 0; j < rhsSize; ++j) {
+      Call call = rhs.get(j);
+      (!rhsMatched[j] || isNear(span.apply(call), lowers, maxUppers) ? nearRhs : exactRhs)
+          .add(call);
+    }
+    return Stream.concat(partition(nearLhs, nearRhs, span), partition(exactLhs, exactRhs, span))
+        .collect(Collectors.toList());
+  }
+
   public int start() {
     return start;
   }
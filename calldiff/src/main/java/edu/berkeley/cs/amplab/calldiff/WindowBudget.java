@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on how much work the candidate search of a single window may do: how many candidates
+ * it may try, how many haplotypes it may generate, and how long it may run for. The search of a
+ * window that goes over any of them is abandoned, and the window is reported as unprocessed, with
+ * the limit that it hit as its {@link OutputTuple.Resolution}. This bounds the time that a handful
+ * of pathological windows can add to a run.
+ */
+public class WindowBudget {
+
+  public static class Builder {
+
+    private long maxCandidates = Long.MAX_VALUE;
+    private long maxHaplotypes = Long.MAX_VALUE;
+    private long maxNanos = Long.MAX_VALUE;
+
+    private Builder() {}
+
+    public WindowBudget build() {
+      return new WindowBudget(maxCandidates, maxHaplotypes, maxNanos);
+    }
+
+    public Builder setMaxCandidates(long maxCandidates) {
+      this.maxCandidates = checkNotNegative("maxCandidates", maxCandidates);
+      return this;
+    }
+
+    /**
+     * Limit the number of haplotypes that generating the haplotypes of each candidate in turn
+     * would produce, whether or not the {@link HaplotypeEngine} actually produces them.
+     */
+    public Builder setMaxHaplotypes(long maxHaplotypes) {
+      this.maxHaplotypes = checkNotNegative("maxHaplotypes", maxHaplotypes);
+      return this;
+    }
+
+    public Builder setMaxTime(long duration, TimeUnit unit) {
+      this.maxNanos = unit.toNanos(checkNotNegative("duration", duration));
+      return this;
+    }
+  }
+
+  /**
+   * Thrown out of the search of a window that went over its budget.
+   */
+  static class ExceededException extends RuntimeException {
+
+    private final OutputTuple.Resolution resolution;
+
+    ExceededException(OutputTuple.Resolution resolution) {
+      super(resolution.name(), null, false, false);
+      this.resolution = resolution;
+    }
+
+    OutputTuple.Resolution resolution() {
+      return resolution;
+    }
+  }
+
+  /**
+   * The work done so far by the search of a single window. It's only safe to use from the thread
+   * that runs the search.
+   */
+  class Tracker {
+
+    private long candidates;
+    private long haplotypes;
+    private final long start = System.nanoTime();
+
+    /**
+     * Account for trying {@code candidates}, including generating their haplotypes.
+     */
+    void charge(CandidateCalls candidates) {
+      chargeCandidate();
+      chargeHaplotypes(HaplotypeGenerator.haplotypeCount(candidates.lhs()));
+      chargeHaplotypes(HaplotypeGenerator.haplotypeCount(candidates.rhs()));
+    }
+
+    void chargeCandidate() {
+      if (maxCandidates < ++candidates) {
+        throw new ExceededException(OutputTuple.Resolution.TOO_MANY_CANDIDATES);
+      }
+      checkTime();
+    }
+
+    void chargeHaplotypes(long count) {
+      haplotypes = Long.MAX_VALUE - count < haplotypes ? Long.MAX_VALUE : haplotypes + count;
+      if (maxHaplotypes < haplotypes) {
+        throw new ExceededException(OutputTuple.Resolution.TOO_MANY_HAPLOTYPES);
+      }
+      checkTime();
+    }
+
+    void checkTime() {
+      if (maxNanos < System.nanoTime() - start) {
+        throw new ExceededException(OutputTuple.Resolution.TIMED_OUT);
+      }
+    }
+  }
+
+  public static final WindowBudget UNLIMITED = builder().build();
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static long checkNotNegative(String name, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException(
+          String.format("%s must not be negative, was %d", name, value));
+    }
+    return value;
+  }
+
+  private final long maxCandidates;
+  private final long maxHaplotypes;
+  private final long maxNanos;
+
+  private WindowBudget(long maxCandidates, long maxHaplotypes, long maxNanos) {
+    this.maxCandidates = maxCandidates;
+    this.maxHaplotypes = maxHaplotypes;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * Start tracking the work done by the search of a window.
+   */
+  Tracker start() {
+    return new Tracker();
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.Range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the calls in a single {@link Window}. The candidates are tried in the order
+ * {@link Window#candidates} returns them, and the first one whose left hand and right hand calls
+ * generate the same set of haplotypes determines which calls matched. Windows whose left hand and
+ * right hand calls are identical record for record match outright, without a search, and so are
+ * most windows with calls on one side only. Otherwise, windows with more than
+ * {@code maxWindowSize} calls on either side aren't searched at all, and are reported as
+ * unprocessed instead, as are the windows whose search goes over the {@link WindowBudget}. The
+ * {@link HaplotypeEngine} decides how the haplotypes are compared, and the {@link CandidateSearch}
+ * how the candidates are visited.
+ *
+ * <p>If a candidate executor is set, the candidates of expensive windows are evaluated
+ * speculatively, a batch at a time, on that executor. The results of a batch are then inspected in
+ * candidate order, so the candidate that is picked is always the same one that evaluating them one
+ * by one would have picked.
+ */
+public class WindowEvaluator implements Function<Window, OutputTuple> {
+
+  public static class Builder {
+
+    private int batchSize = 1;
+    private WindowBudget budget = WindowBudget.UNLIMITED;
+    private Optional<ExecutorService> candidateExecutor = Optional.empty();
+    private CandidateSearch candidateSearch = CandidateSearch.PAIRWISE;
+    private HaplotypeEngine haplotypeEngine = HaplotypeEngine.ENUMERATE;
+    private int maxWindowSize = DEFAULT_MAX_WINDOW_SIZE;
+    private final FastaReader.FastaFile reference;
+    private Optional<RepeatIndex> repeatIndex = Optional.empty();
+    private boolean splitExactMatches;
+    private WindowSpan windowSpan = WindowSpan.DISTANCE;
+
+    private Builder(FastaReader.FastaFile reference) {
+      this.reference = reference;
+    }
+
+    public WindowEvaluator build() {
+      return new WindowEvaluator(reference, candidateExecutor, batchSize, maxWindowSize,
+          haplotypeEngine, candidateSearch, budget, splitExactMatches, windowSpan, repeatIndex);
+    }
+
+    /**
+     * Abandon the search of any window that goes over {@code budget}.
+     */
+    public Builder setBudget(WindowBudget budget) {
+      this.budget = budget;
+      return this;
+    }
+
+    /**
+     * Evaluate the candidates of expensive windows on {@code executor}, {@code batchSize} at a
+     * time.
+     */
+    public Builder setCandidateExecutor(ExecutorService executor, int batchSize) {
+      if (batchSize < 1) {
+        throw new IllegalArgumentException(
+            String.format("batchSize must be positive, was %d", batchSize));
+      }
+      this.candidateExecutor = Optional.of(executor);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    public Builder setCandidateSearch(CandidateSearch candidateSearch) {
+      this.candidateSearch = candidateSearch;
+      return this;
+    }
+
+    public Builder setHaplotypeEngine(HaplotypeEngine haplotypeEngine) {
+      this.haplotypeEngine = haplotypeEngine;
+      return this;
+    }
+
+    public Builder setMaxWindowSize(int maxWindowSize) {
+      if (maxWindowSize < 0) {
+        throw new IllegalArgumentException(
+            String.format("maxWindowSize must not be negative, was %d", maxWindowSize));
+      }
+      if (MAX_MAX_WINDOW_SIZE < maxWindowSize) {
+        throw new IllegalArgumentException(String.format("maxWindowSize must be at most %d, was %d",
+            MAX_MAX_WINDOW_SIZE, maxWindowSize));
+      }
+      this.maxWindowSize = maxWindowSize;
+      return this;
+    }
+
+    /**
+     * Look up the spans of {@link WindowSpan#TANDEM_REPEAT} in {@code repeatIndex}, instead of
+     * scanning the reference around every call.
+     */
+    public Builder setRepeatIndex(RepeatIndex repeatIndex) {
+      this.repeatIndex = Optional.of(repeatIndex);
+      return this;
+    }
+
+    /**
+     * Split each window that {@link #partition} makes with {@link Window#splitExactMatches}, so
+     * that only the calls without an exact match, and their neighbors, are searched. Each part is
+     * then compared, and reported, as a window of its own.
+     */
+    public Builder setSplitExactMatches(boolean splitExactMatches) {
+      this.splitExactMatches = splitExactMatches;
+      return this;
+    }
+
+    /**
+     * Decide which calls {@link #partition} puts in the same window with {@code windowSpan}.
+     */
+    public Builder setWindowSpan(WindowSpan windowSpan) {
+      this.windowSpan = windowSpan;
+      return this;
+    }
+  }
+
+  /**
+   * How the candidates of a window are searched for the first one that matches.
+   */
+  public enum CandidateSearch {
+
+    /**
+     * Compare the haplotypes of each candidate in turn with the {@link HaplotypeEngine}, possibly
+     * on the candidate executor. This stops as soon as a candidate matches, but generates the
+     * haplotypes of a subset again for every candidate it's part of.
+     */
+    PAIRWISE,
+
+    /**
+     * Generate the haplotypes of each subset once, and join the two sides on their fingerprints
+     * with a {@link FingerprintJoin}. This always generates the haplotypes as strings, whatever
+     * the {@link HaplotypeEngine}, and doesn't use the candidate executor.
+     */
+    FINGERPRINT_JOIN
+  }
+
+  public static final int DEFAULT_MAX_WINDOW_SIZE = 10;
+
+  /**
+   * The largest {@code maxWindowSize} that may be set. Every non-overlapping subset of both sides
+   * of a window is built before its first candidate is evaluated, and there can be as many as 2^n
+   * of them for n calls, whatever the {@link WindowBudget}.
+   */
+  public static final int MAX_MAX_WINDOW_SIZE = 16;
+
+  /**
+   * The {@link Window#estimatedCost} below which the candidates are always evaluated on the calling
+   * thread, because handing them to another thread would cost more than it saves.
+   */
+  private static final double PARALLEL_CANDIDATES_MIN_COST = 1 << 12;
+
+  public static Builder builder(FastaReader.FastaFile reference) {
+    return new Builder(reference);
+  }
+
+  /**
+   * Whether the left hand and right hand calls of {@code window} have the same positions, alleles,
+   * genotypes and phasesets, in the same order, with no two calls on a side overlapping. The full
+   * sets of calls then generate the same haplotypes, so they are the largest matching candidate.
+   */
+  private static boolean isIdentical(Window window) {
+    List<Call> lhs = window.lhs(), rhs = window.rhs();
+    int size = lhs.size();
+    if (size != rhs.size()) {
+      return false;
+    }
+    int end = Integer.MIN_VALUE;
+    for (int i = 0; i < size; ++i) {
+      Call lhsCall = lhs.get(i), rhsCall = rhs.get(i);
+      if (lhsCall.position() != rhsCall.position()
+          || lhsCall.position() < end
+          || !lhsCall.reference().equals(rhsCall.reference())
+          || !lhsCall.alternates().equals(rhsCall.alternates())
+          || !lhsCall.genotype().equals(rhsCall.genotype())
+          || !lhsCall.phaseset().equals(rhsCall.phaseset())) {
+        return false;
+      }
+      end = Math.max(end, lhsCall.end());
+    }
+    return true;
+  }
+
+  /**
+   * The calls that match in a window with calls on only one side, or nothing if they can't be
+   * found without a search. On that side, a subset of calls matches only if it leaves every
+   * haplotype equal to the reference. A call whose alleles all equal its reference allele, once
+   * their case is normalized as the search does, always does. Alleles that can't be normalized
+   * are left to the search. If no two calls overlap, the other calls each replace a stretch of
+   * the reference that no other call touches, so they can only be undone by a change in length
+   * elsewhere, and only if there are both insertions and deletions among them. Otherwise the
+   * calls that leave the reference unchanged are the largest subset that matches, which is what
+   * the search would find.
+   */
+  private static Optional<CandidateCalls> oneSidedCandidate(Window window) {
+    List<Call> lhs = window.lhs(), rhs = window.rhs();
+    if (!lhs.isEmpty() && !rhs.isEmpty()) {
+      return Optional.empty();
+    }
+    List<Call> referenceCalls = new ArrayList<>();
+    boolean insertions = false, deletions = false;
+    int end = Integer.MIN_VALUE;
+    for (Call call : lhs.isEmpty() ? rhs : lhs) {
+      if (call.position() < end) {
+        return Optional.empty();
+      }
+      end = Math.max(end, call.end());
+      String reference;
+      List<String> alternates;
+      try {
+        reference = CaseNormalizer.normalizeCase(call.reference());
+        alternates = call.alternates().stream()
+            .map(CaseNormalizer::normalizeCase)
+            .collect(Collectors.toList());
+      } catch (IllegalArgumentException e) {
+        return Optional.empty();
+      }
+      boolean isReference = true;
+      for (int index : call.genotype()) {
+        if (index < 0 || alternates.size() < index) {
+          return Optional.empty();
+        }
+        String allele = 0 == index ? reference : alternates.get(index - 1);
+        isReference &= reference.equals(allele);
+        insertions |= reference.length() < allele.length();
+        deletions |= allele.length() < reference.length();
+      }
+      if (isReference) {
+        referenceCalls.add(call);
+      }
+    }
+    if (insertions && deletions) {
+      return Optional.empty();
+    }
+    return Optional.of(CandidateCalls.create(
+        window.contig(),
+        window.start(),
+        window.end(),
+        lhs.isEmpty() ? Collections.emptyList() : referenceCalls,
+        lhs.isEmpty() ? referenceCalls : Collections.emptyList()));
+  }
+
+  private final int batchSize;
+  private final WindowBudget budget;
+  private final Optional<ExecutorService> candidateExecutor;
+  private final CandidateSearch candidateSearch;
+  private final HaplotypeEngine haplotypeEngine;
+  private final int maxWindowSize;
+  private final FastaReader.FastaFile reference;
+  private final Optional<RepeatIndex> repeatIndex;
+  private final boolean splitExactMatches;
+  private final WindowSpan windowSpan;
+
+  private WindowEvaluator(FastaReader.FastaFile reference,
+      Optional<ExecutorService> candidateExecutor, int batchSize, int maxWindowSize,
+      HaplotypeEngine haplotypeEngine, CandidateSearch candidateSearch, WindowBudget budget,
+      boolean splitExactMatches, WindowSpan windowSpan, Optional<RepeatIndex> repeatIndex) {
+    this.reference = reference;
+    this.candidateExecutor = candidateExecutor;
+    this.batchSize = batchSize;
+    this.maxWindowSize = maxWindowSize;
+    this.haplotypeEngine = haplotypeEngine;
+    this.candidateSearch = candidateSearch;
+    this.budget = budget;
+    this.splitExactMatches = splitExactMatches;
+    this.windowSpan = windowSpan;
+    this.repeatIndex = repeatIndex;
+  }
+
+  @Override
+  public OutputTuple apply(Window window) {
+    if (isIdentical(window)) {
+      return window.createOutputTuple(
+          Optional.of(CandidateCalls.create(
+              window.contig(), window.start(), window.end(), window.lhs(), window.rhs())),
+          OutputTuple.Resolution.IDENTICAL);
+    }
+    Optional<CandidateCalls> oneSided = oneSidedCandidate(window);
+    if (oneSided.isPresent()) {
+      return window.createOutputTuple(oneSided, OutputTuple.Resolution.ONE_SIDED);
+    }
+    if (maxWindowSize < window.size()) {
+      return OutputTuple.builder(window)
+          .setResolution(OutputTuple.Resolution.TOO_LARGE)
+          .build();
+    }
+    try {
+      return window.createOutputTuple(findFirst(window, budget.start()));
+    } catch (WindowBudget.ExceededException e) {
+      return OutputTuple.builder(window)
+          .setResolution(e.resolution())
+          .build();
+    }
+  }
+
+  /**
+   * The {@link Window#estimatedCost} of comparing {@code window}, or zero if it has more calls
+   * than {@code maxWindowSize}, since it is then reported as unprocessed without a search.
+   */
+  public double estimatedCost(Window window) {
+    return maxWindowSize < window.size() ? 0 : window.estimatedCost();
+  }
+
+  private Optional<CandidateCalls> findFirst(Window window, WindowBudget.Tracker tracker) {
+    switch (candidateSearch) {
+      case FINGERPRINT_JOIN:
+        return FingerprintJoin.findFirst(window, reference, tracker);
+      default:
+        return candidateExecutor.isPresent()
+                && PARALLEL_CANDIDATES_MIN_COST <= window.estimatedCost()
+            ? findFirstInParallel(window, candidateExecutor.get(), tracker)
+            : window.candidates(tracker)
+                .filter(candidates -> {
+                      tracker.charge(candidates);
+                      return candidates.generatesSameSetOfHaplotypes(reference, haplotypeEngine);
+                    })
+                .findFirst();
+    }
+  }
+
+  private Optional<CandidateCalls> findFirstInParallel(Window window, ExecutorService executor,
+      WindowBudget.Tracker tracker) {
+    Iterator<CandidateCalls> iterator = window.candidates(tracker).iterator();
+    List<CandidateCalls> batch = new ArrayList<>(batchSize);
+    List<Future<Boolean>> results = new ArrayList<>(batchSize);
+    try {
+      while (iterator.hasNext()) {
+        batch.clear();
+        results.clear();
+        while (batch.size() < batchSize && iterator.hasNext()) {
+          CandidateCalls candidates = iterator.next();
+          tracker.charge(candidates);
+          batch.add(candidates);
+          results.add(executor.submit(
+              () -> candidates.generatesSameSetOfHaplotypes(reference, haplotypeEngine)));
+        }
+        for (int i = 0; i < batch.size(); ++i) {
+          if (ExceptionWrapper.getUnchecked(results.get(i))) {
+            return Optional.of(batch.get(i));
+          }
+        }
+      }
+      return Optional.empty();
+    } finally {
+      for (Future<Boolean> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Partition the calls into the windows this evaluator compares, with its {@link WindowSpan}, and
+   * split those windows if it splits exact matches.
+   */
+  public Stream<Window> partition(List<Call> lhs, List<Call> rhs) {
+    return split(Window.partition(lhs, rhs, span()));
+  }
+
+  /**
+   * Like {@link #partition(List, List)}, but lazily, over sorted streams of calls.
+   */
+  public Stream<Window> partition(Stream<Call> lhs, Stream<Call> rhs) {
+    return split(Window.partition(lhs, rhs, span()));
+  }
+
+  private Function<Call, Range<Integer>> span() {
+    if (WindowSpan.TANDEM_REPEAT == windowSpan && repeatIndex.isPresent()) {
+      return repeatIndex.get()::span;
+    }
+    return call -> windowSpan.span(reference, call);
+  }
+
+  private Stream<Window> split(Stream<Window> windows) {
+    if (!splitExactMatches) {
+      return windows;
+    }
+    Function<Call, Range<Integer>> span = span();
+    return windows.flatMap(window -> window.splitExactMatches(span).stream());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import com.google.common.collect.Range;
+
+/**
+ * The ways of deciding which calls {@link Window#partition} puts in the same window. Each call is
+ * given a span on the reference, and calls whose spans overlap end up together.
+ */
+public enum WindowSpan {
+
+  /**
+   * Span each call from its position to a fixed distance past its end. This doesn't look at the
+   * reference, so dense regions become large windows even when their calls can't interact.
+   */
+  DISTANCE {
+    @Override public Range<Integer> span(FastaReader.FastaFile reference, Call call) {
+      return Window.distanceSpan(call);
+    }
+  },
+
+  /**
+   * Span each call over the tandem repeats of the reference that it touches, plus one base on
+   * either side. A tandem repeat is a stretch of at least {@code MIN_REPEAT_LENGTH} bases, and at
+   * least two copies, of a unit of at most {@code MAX_PERIOD} bases other than {@code N}. An indel
+   * can be shifted anywhere within such a repeat without changing the haplotypes it generates, so
+   * these are the calls that can actually interact with each other, however far apart they are.
+   * At most {@code MAX_EXTENSION} bases are scanned in either direction. {@link RepeatIndex#span}
+   * gives the same spans from an index of the repeats.
+   */
+  TANDEM_REPEAT {
+    @Override public Range<Integer> span(FastaReader.FastaFile reference, Call call) {
+      String contig = call.contig();
+      int position = call.position(),
+          end = Math.max(position, call.end()),
+          from = Math.max(0, position - MAX_EXTENSION),
+          to = Math.min(reference.contigLength(contig), end + MAX_EXTENSION);
+      if (to <= position) {
+        return Range.closedOpen(position - 1, end + 1);
+      }
+      String bases = reference.get(contig, from, to).toUpperCase();
+      int start = position - from, stop = Math.min(end, to) - from, lower = start, upper = stop;
+      for (int period = 1; period <= MAX_PERIOD; ++period) {
+        // The repeat that the base before the call ends, and the one that its last base begins.
+        if (repeats(bases, start - 1, period)) {
+          int[] repeat = repeat(bases, start - 1, period);
+          if (isLongEnough(repeat, period)) {
+            lower = Math.min(lower, repeat[0]);
+          }
+        }
+        if (repeats(bases, stop - period, period)) {
+          int[] repeat = repeat(bases, stop - period, period);
+          if (isLongEnough(repeat, period)) {
+            upper = Math.max(upper, repeat[1]);
+          }
+        }
+      }
+      return Range.closedOpen(from + lower - 1, from + upper + 1);
+    }
+  };
+
+  static final int MAX_EXTENSION = 1000;
+
+  static final int MAX_PERIOD = 6;
+
+  static final int MIN_REPEAT_LENGTH = 8;
+
+  /**
+   * Whether the repeat {@code [repeat[0], repeat[1])} of a unit of {@code period} bases is long
+   * enough to count.
+   */
+  static boolean isLongEnough(int[] repeat, int period) {
+    return Math.max(2 * period, MIN_REPEAT_LENGTH) <= repeat[1] - repeat[0];
+  }
+
+  /**
+   * The repeat with a unit of {@code period} bases through the base at {@code i}, which must
+   * {@link #repeats}: the bases from the first to the last of the adjacent bases that repeat the
+   * base {@code period} bases after them, plus those {@code period} bases.
+   */
+  private static int[] repeat(String bases, int i, int period) {
+    int first = i, last = i;
+    while (repeats(bases, first - 1, period)) {
+      --first;
+    }
+    while (repeats(bases, last + 1, period)) {
+      ++last;
+    }
+    return new int[] { first, last + 1 + period };
+  }
+
+  /**
+   * Whether the base at {@code i} is repeated {@code period} bases later.
+   */
+  static boolean repeats(CharSequence bases, int i, int period) {
+    if (i < 0 || bases.length() <= i + period) {
+      return false;
+    }
+    char base = bases.charAt(i);
+    return 'N' != base && base == bases.charAt(i + period);
+  }
+
+  /**
+   * The span of {@code call}, which must be on a contig of {@code reference}.
+   */
+  public abstract Range<Integer> span(FastaReader.FastaFile reference, Call call);
+}
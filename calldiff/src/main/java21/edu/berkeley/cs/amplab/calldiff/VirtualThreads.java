@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads added in Java 21. This class is only compiled by the
+ * {@code virtual-threads} Maven profile, and {@link ExecutionMode#VIRTUAL} looks it up by name so
+ * that the rest of the code still builds and runs on Java 8.
+ */
+public class VirtualThreads {
+
+  /**
+   * Returns an {@link ExecutorService} that starts a new virtual thread for every task.
+   */
+  public static ExecutorService newExecutor() {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+        .name("calldiff-virtual-", 0)
+        .factory());
+  }
+
+  private VirtualThreads() {}
+}
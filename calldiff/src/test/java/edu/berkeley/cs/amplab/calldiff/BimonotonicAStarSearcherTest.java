@@ -16,6 +16,7 @@
  */
 package edu.berkeley.cs.amplab.calldiff;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.HashMultiset;
@@ -26,10 +27,16 @@ import org.junit.Test;
 import edu.berkeley.cs.amplab.calldiff.BimonotonicAStarSearcher;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 /**
  * Unit test for {@link BimonotonicAStarSearcher}.
@@ -45,6 +52,32 @@ public class BimonotonicAStarSearcherTest {
     return list;
   }
 
+  /**
+   * Search the Cartesian product of {@code lhs} and {@code rhs} with a {@link PriorityQueue},
+   * returning the cells {@code (i, j)} in the order that they're polled.
+   */
+  private static List<List<Integer>> priorityQueueSearch(
+      List<Integer> lhs, List<Integer> rhs, Comparator<List<Integer>> comparator) {
+    List<List<Integer>> cells = new ArrayList<>();
+    PriorityQueue<List<Integer>> queue = new PriorityQueue<>(1, comparator);
+    Set<List<Integer>> visited = new HashSet<>();
+    visited.add(Arrays.asList(0, 0));
+    queue.offer(Arrays.asList(0, 0));
+    for (List<Integer> cell; null != (cell = queue.poll());) {
+      cells.add(cell);
+      int i = cell.get(0), j = cell.get(1);
+      for (List<Integer> neighbor : Arrays.asList(
+          Arrays.asList(i + 1, j),
+          Arrays.asList(i, j + 1))) {
+        if (neighbor.get(0) < lhs.size() && neighbor.get(1) < rhs.size()
+            && visited.add(neighbor)) {
+          queue.offer(neighbor);
+        }
+      }
+    }
+    return cells;
+  }
+
   @Test
   public void testSearch() {
     Random random = new Random();
@@ -78,4 +111,33 @@ public class BimonotonicAStarSearcherTest {
     // Assert that the entire Cartesian product was covered.
     assertTrue(multiset.isEmpty());
   }
+
+  @Test
+  public void testTies() {
+    Random random = new Random();
+    for (int n = 1; n < 40; ++n) {
+      ArrayList<Integer>
+          lhs = randomList(random, n, 2),
+          rhs = randomList(random, random.nextInt(40) + 1, 2);
+      Comparator<List<Integer>> comparator =
+          Comparator.comparing(cell -> lhs.get(cell.get(0)) + rhs.get(cell.get(1)));
+      ArrayList<Integer>
+          lhsIndices = new ArrayList<>(),
+          rhsIndices = new ArrayList<>();
+      for (int i = 0; i < lhs.size(); ++i) {
+        lhsIndices.add(i);
+      }
+      for (int j = 0; j < rhs.size(); ++j) {
+        rhsIndices.add(j);
+      }
+      assertEquals(
+          priorityQueueSearch(lhs, rhs, comparator),
+          BimonotonicAStarSearcher.<Integer, Integer, List<Integer>>builder()
+              .setBiFunction(Arrays::asList)
+              .setComparator(comparator)
+              .build()
+              .search(lhsIndices, rhsIndices)
+              .collect(Collectors.toList()));
+    }
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.BufferedCallScanner;
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.CallScanner;
+import edu.berkeley.cs.amplab.calldiff.RingBuffer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link BufferedCallScanner}
+ */
+public class BufferedCallScannerTest {
+
+  private static CallScanner scanner(List<Call> calls) {
+    return new CallScanner() {
+          @Override public <X> X scan(Callback<? extends X> callback) {
+            return callback.scan(calls.stream());
+          }
+        };
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    List<Call> calls = randomCalls(new Random(), "chr1", 100, 5, 50);
+    for (int batchSize = 1; batchSize < 8; ++batchSize) {
+      assertEquals(
+          calls,
+          BufferedCallScanner.create(scanner(calls), 2, batchSize)
+              .scan(stream -> stream.collect(Collectors.toList())));
+    }
+  }
+
+  @Test
+  public void testConcurrentScan() throws IOException {
+    Random random = new Random();
+    List<Call>
+        lhs = randomCalls(random, "chr1", 100, 5, 50),
+        rhs = randomCalls(random, "chr1", 100, 5, 50);
+    assertEquals(
+        Stream.concat(lhs.stream(), rhs.stream()).collect(Collectors.toList()),
+        BufferedCallScanner.create(scanner(lhs), 1, 1)
+            .scan((CallScanner.Callback<List<Call>>) lhsCalls -> {
+              try {
+                return BufferedCallScanner.create(scanner(rhs), 1, 1)
+                    .scan(rhsCalls -> Stream.concat(lhsCalls, rhsCalls)
+                        .collect(Collectors.toList()));
+              } catch (IOException e) {
+                throw new AssertionError(e);
+              }
+            }));
+  }
+
+  @Test
+  public void testEarlyTermination() throws IOException {
+    List<Call> calls = randomCalls(new Random(), "chr1", 100, 5, 50);
+    assertEquals(
+        Optional.of(calls.get(0)),
+        BufferedCallScanner.create(scanner(calls), 1, 1).scan(Stream::findFirst));
+  }
+
+  @Test
+  public void testIOException() {
+    try {
+      BufferedCallScanner
+          .create(new CallScanner() {
+                @Override public <X> X scan(Callback<? extends X> callback) throws IOException {
+                  throw new IOException("expected");
+                }
+              })
+          .scan(Stream::count);
+      fail();
+    } catch (IOException e) {
+      assertEquals("expected", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testWaitStrategies() throws IOException {
+    List<Call> calls = randomCalls(new Random(), "chr1", 100, 5, 50);
+    for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values()) {
+      assertEquals(
+          calls,
+          BufferedCallScanner.create(scanner(calls), 2, 4, waitStrategy)
+              .scan(stream -> stream.collect(Collectors.toList())));
+    }
+  }
+}
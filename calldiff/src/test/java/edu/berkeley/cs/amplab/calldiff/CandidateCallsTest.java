@@ -21,11 +21,15 @@ import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Integer.MIN_VALUE;
 import static java.lang.Integer.max;
 import static java.lang.Integer.min;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
 
 import org.junit.Test;
 
@@ -37,9 +41,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -126,4 +134,83 @@ public class CandidateCallsTest {
       return null;
     });
   }
+
+  @Test
+  public void testLengthDeltaBounds() {
+    List<Integer> het = Arrays.asList(0, 1), hom = Arrays.asList(1, 1);
+    Call
+        snp = TestCall.create("chr1", 10, "A", Collections.singletonList("C"), het),
+        deletion = TestCall.create("chr1", 20, "AAA", Collections.singletonList("A"), het),
+        homInsertion = TestCall.create("chr1", 30, "A", Collections.singletonList("AC"), hom),
+        phasedDeletion = TestCall.create(
+            "chr1", 20, "AAA", Collections.singletonList("A"), het, Call.Phaseset.create(1)),
+        phasedInsertion = TestCall.create(
+            "chr1", 30, "A", Collections.singletonList("ACC"), het, Call.Phaseset.create(1));
+    assertEquals(Arrays.asList(0, 0), CandidateCalls.lengthDeltaBounds(Arrays.asList()));
+    assertEquals(Arrays.asList(0, 0), CandidateCalls.lengthDeltaBounds(Arrays.asList(snp)));
+    assertEquals(
+        Arrays.asList(-1, 1),
+        CandidateCalls.lengthDeltaBounds(Arrays.asList(snp, deletion, homInsertion)));
+    // The phased deletion and insertion are on the same haplotype, so they cancel out.
+    assertEquals(
+        Arrays.asList(0, 0),
+        CandidateCalls.lengthDeltaBounds(Arrays.asList(phasedDeletion, phasedInsertion)));
+  }
+
+  @Test
+  public void testLengthDeltas() {
+    List<Integer> het = Arrays.asList(0, 1), hom = Arrays.asList(1, 1);
+    Call
+        snp = TestCall.create("chr1", 10, "A", Collections.singletonList("C"), het),
+        deletion = TestCall.create("chr1", 20, "AAA", Collections.singletonList("A"), het),
+        homInsertion = TestCall.create("chr1", 30, "A", Collections.singletonList("AC"), hom),
+        insertion = TestCall.create("chr1", 40, "A", Arrays.asList("AC", "ACC"), het),
+        noCall = TestCall.create("chr1", 50, "A", Collections.singletonList("C"),
+            Arrays.asList(-1, 1));
+    assertEquals(
+        Optional.of(new HashSet<>(Arrays.asList(0))),
+        CandidateCalls.lengthDeltas(Arrays.asList(snp)));
+    assertEquals(
+        Optional.of(new HashSet<>(Arrays.asList(-1, 1))),
+        CandidateCalls.lengthDeltas(Arrays.asList(snp, deletion, homInsertion)));
+    assertEquals(
+        Optional.of(new HashSet<>(Arrays.asList(-2, -1, 0, 1))),
+        CandidateCalls.lengthDeltas(Arrays.asList(deletion, insertion)));
+    assertEquals(Optional.empty(), CandidateCalls.lengthDeltas(Arrays.asList(snp, noCall)));
+  }
+
+  @Test
+  public void testNonOverlappingSubsets() {
+    Random random = new Random();
+    for (int maxCallLen = 1; maxCallLen < 20; ++maxCallLen) {
+      for (int numCalls = 0; numCalls < 12; ++numCalls) {
+        ArrayList<Call> calls = TestCall.randomCalls(random, "chr1", 100, maxCallLen, numCalls);
+        List<List<Call>> expected = Sets.powerSet(Sets.newLinkedHashSet(calls))
+            .stream()
+            .filter(set -> set.stream().noneMatch(
+                lhs -> set.stream().anyMatch(rhs -> lhs != rhs && lhs.overlaps(rhs))))
+            .map(Lists::newArrayList)
+            .sorted(Comparator.comparing(List::size, Comparator.reverseOrder()))
+            .collect(Collectors.toList());
+        assertEquals(expected, CandidateCalls.nonOverlappingSubsets(calls));
+      }
+    }
+  }
+
+  @Test
+  public void testNonOverlappingSubsetsWithEmptyCalls() {
+    List<Integer> het = Arrays.asList(0, 1);
+    Call
+        deletion = TestCall.create("chr1", 10, "AAAAAAAAAA", Arrays.asList("A"), het),
+        empty = TestCall.create("chr1", 10, "", Arrays.asList("C"), het),
+        snp = TestCall.create("chr1", 12, "A", Arrays.asList("C"), het);
+    // The empty call overlaps neither of the others, so it can't stand in for the deletion when
+    // checking whether the SNP can be added.
+    List<List<Call>> subsets =
+        CandidateCalls.nonOverlappingSubsets(Lists.newArrayList(deletion, empty, snp));
+    assertEquals(6, subsets.size());
+    for (List<Call> subset : subsets) {
+      assertFalse(subset.contains(deletion) && subset.contains(snp));
+    }
+  }
 }
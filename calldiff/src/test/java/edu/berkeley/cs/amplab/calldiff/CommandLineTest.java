@@ -23,6 +23,11 @@ import org.junit.Test;
 import java.util.Optional;
 
 import edu.berkeley.cs.amplab.calldiff.CommandLine;
+import edu.berkeley.cs.amplab.calldiff.ExecutionMode;
+import edu.berkeley.cs.amplab.calldiff.HaplotypeEngine;
+import edu.berkeley.cs.amplab.calldiff.RingBuffer;
+import edu.berkeley.cs.amplab.calldiff.WindowEvaluator;
+import edu.berkeley.cs.amplab.calldiff.WindowSpan;
 
 /**
  * Unit test for {@link CommandLine}
@@ -33,21 +38,51 @@ public class CommandLineTest {
   public void testCommandLine() {
     assertEquals(
         Optional.of(CommandLine.builder()
+            .setCandidateSearch(WindowEvaluator.CandidateSearch.FINGERPRINT_JOIN)
+            .setCandidateThreads(2)
+            .setExecutionMode(ExecutionMode.CONTIG)
+            .setHaplotypeEngine(HaplotypeEngine.AUTOMATON)
+            .setHashJoin(true)
             .setLhsSampleId("lhs_sample_id")
             .setLhsVcf("lhs_vcf")
+            .setMaxCandidates(1000L)
+            .setMaxHaplotypes(100000L)
+            .setMaxWindowMillis(500L)
+            .setMaxWindowSize(12)
+            .setNormalize(true)
             .setPresorted(true)
             .setReferenceFai("reference_fai")
             .setReferenceFasta("reference_fasta")
+            .setRepeatIndex("repeat_index")
             .setRhsSampleId("rhs_sample_id")
             .setRhsVcf("rhs_vcf")
+            .setSplitExactMatches(true)
+            .setThreads(4)
+            .setWaitStrategy(RingBuffer.WaitStrategy.SPIN)
+            .setWindowSpan(WindowSpan.TANDEM_REPEAT)
             .build()),
         CommandLine.parse(
+            "--candidate_search=FINGERPRINT_JOIN",
+            "--candidate_threads=2",
+            "--execution_mode=CONTIG",
+            "--haplotype_engine=AUTOMATON",
+            "--hash_join",
             "--lhs_sample_id=lhs_sample_id",
             "--lhs_vcf=lhs_vcf",
+            "--max_candidates=1000",
+            "--max_haplotypes=100000",
+            "--max_window_millis=500",
+            "--max_window_size=12",
+            "--normalize",
             "--presorted",
             "--reference_fai=reference_fai",
             "--reference_fasta=reference_fasta",
+            "--repeat_index=repeat_index",
             "--rhs_sample_id=rhs_sample_id",
-            "--rhs_vcf=rhs_vcf"));
+            "--rhs_vcf=rhs_vcf",
+            "--split_exact_matches",
+            "--threads=4",
+            "--wait_strategy=SPIN",
+            "--window_span=TANDEM_REPEAT"));
   }
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.ContigPartition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link ContigPartition}
+ */
+public class ContigPartitionTest {
+
+  private static ArrayList<Call> calls(Random random, String... contigs) {
+    ArrayList<Call> calls = new ArrayList<>();
+    for (String contig : contigs) {
+      calls.addAll(randomCalls(random, contig, 100, 5, random.nextInt(10)));
+    }
+    return calls;
+  }
+
+  private static ArrayList<Call> filter(List<Call> calls, String contig) {
+    return calls.stream()
+        .filter(call -> contig.equals(call.contig()))
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  private static void testPartition(String[] lhsContigs, String[] rhsContigs) {
+    Random random = new Random();
+    ArrayList<Call>
+        lhs = calls(random, lhsContigs),
+        rhs = calls(random, rhsContigs);
+    assertEquals(
+        Stream.of("chr1", "chr2")
+            .map(contig -> ContigPartition.create(contig, filter(lhs, contig), filter(rhs, contig)))
+            .filter(partition -> !(partition.lhs().isEmpty() && partition.rhs().isEmpty()))
+            .collect(Collectors.toList()),
+        ContigPartition.partition(lhs.stream(), rhs.stream()).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testPartition() {
+    String[] both = { "chr1", "chr2" }, chr1 = { "chr1" }, chr2 = { "chr2" };
+    testPartition(both, both);
+    testPartition(chr1, chr2);
+    testPartition(chr2, chr1);
+    testPartition(both, chr2);
+    testPartition(chr1, both);
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals(
+        Arrays.asList(),
+        ContigPartition.partition(Stream.empty(), Stream.empty()).collect(Collectors.toList()));
+  }
+}
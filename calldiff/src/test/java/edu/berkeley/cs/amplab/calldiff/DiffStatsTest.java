@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.HashMultiset;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.DiffStats;
+import edu.berkeley.cs.amplab.calldiff.OutputTuple;
+import edu.berkeley.cs.amplab.calldiff.Window;
+import edu.berkeley.cs.amplab.calldiff.WindowEvaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link DiffStats}
+ */
+public class DiffStatsTest {
+
+  /**
+   * Create an {@link OutputTuple} for a window of random calls, with each call randomly marked as
+   * matching or not matching. The windows that are too big to be searched are marked with one of
+   * the reasons for not processing a window, and so get reported as unprocessed.
+   */
+  private static OutputTuple randomTuple(Random random) {
+    ArrayList<Call>
+        lhs = randomCalls(random, "chr1", 100, 5, random.nextInt(15)),
+        rhs = randomCalls(random, "chr1", 100, 5, random.nextInt(15));
+    Window window = Window.create("chr1", 0, 100, lhs, rhs);
+    OutputTuple.Builder tuple = OutputTuple.builder(window);
+    if (WindowEvaluator.DEFAULT_MAX_WINDOW_SIZE < window.size()) {
+      OutputTuple.Resolution[] unprocessed = Stream.of(OutputTuple.Resolution.values())
+          .filter(resolution -> !resolution.isProcessed())
+          .toArray(OutputTuple.Resolution[]::new);
+      tuple.setResolution(unprocessed[random.nextInt(unprocessed.length)]);
+    }
+    for (Call call : lhs) {
+      if (random.nextBoolean()) {
+        tuple.addMatchingLhs(singleton(call));
+      } else {
+        tuple.addNotMatchingLhs(singleton(call));
+      }
+    }
+    for (Call call : rhs) {
+      if (random.nextBoolean()) {
+        tuple.addMatchingRhs(singleton(call));
+      } else {
+        tuple.addNotMatchingRhs(singleton(call));
+      }
+    }
+    return tuple.build();
+  }
+
+  private static List<Call> singleton(Call call) {
+    List<Call> list = new ArrayList<>();
+    list.add(call);
+    return list;
+  }
+
+  @Test
+  public void testMerge() {
+    Random random = new Random();
+    List<OutputTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      tuples.add(randomTuple(random));
+    }
+    DiffStats expected = tuples.stream().collect(DiffStats.builder());
+    assertEquals(tuples.size(), expected.resolutions().size());
+    List<OutputTuple> unprocessed = tuples.stream()
+        .filter(tuple -> !tuple.resolution().isProcessed())
+        .collect(Collectors.toList());
+    assertEquals(unprocessed, expected.unprocessed());
+    assertEquals(
+        unprocessed.stream().map(OutputTuple::window).collect(Collectors.toList()),
+        expected.unprocessedWindows());
+    List<DiffStats> parts = new ArrayList<>();
+    for (int i = 0; i < tuples.size(); i += 10) {
+      parts.add(tuples.subList(i, i + 10).stream().collect(DiffStats.builder()));
+    }
+    DiffStats actual = DiffStats.merge(parts);
+    assertEquals(expected, actual);
+    assertEquals(expected.unprocessedWindows(), actual.unprocessedWindows());
+  }
+
+  @Test
+  public void testParallelCollect() {
+    Random random = new Random();
+    List<OutputTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      tuples.add(randomTuple(random));
+    }
+    DiffStats
+        expected = tuples.stream().collect(DiffStats.builder()),
+        actual = tuples.parallelStream().collect(DiffStats.builder());
+    assertEquals(expected, actual);
+    assertEquals(
+        HashMultiset.create(expected.unprocessedWindows()),
+        HashMultiset.create(actual.unprocessedWindows()));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.DiffStats;
+import edu.berkeley.cs.amplab.calldiff.ExecutionMode;
+import edu.berkeley.cs.amplab.calldiff.WindowEvaluator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Unit test for {@link ExecutionMode}
+ */
+public class ExecutionModeTest {
+
+  private static final List<List<Integer>> GENOTYPES =
+      Arrays.asList(Arrays.asList(0, 1), Arrays.asList(1, 0), Arrays.asList(1, 1));
+
+  /**
+   * Create up to {@code numberOfCalls} random SNPs, insertions and deletions with random genotypes
+   * on each of the contigs of the given reference, so that the windows have something to compare.
+   */
+  private static ArrayList<Call> randomCalls(Random random, FastaReader.FastaFile reference,
+      int numberOfCalls) {
+    ArrayList<Call> calls = new ArrayList<>();
+    for (String contig : new TreeSet<>(reference.contigs())) {
+      int contigLength = reference.contigLength(contig);
+      SortedMap<Integer, Call> contigCalls = new TreeMap<>();
+      for (int i = random.nextInt(numberOfCalls + 1); 0 < i; --i) {
+        int position = random.nextInt(contigLength - 4), length = 1 + random.nextInt(3);
+        String ref = reference.get(contig, position, position + length), alt;
+        switch (random.nextInt(3)) {
+          case 0:
+            String bases = "ACGT".replace(ref.substring(0, 1), "");
+            alt = bases.charAt(random.nextInt(bases.length())) + ref.substring(1);
+            break;
+          case 1:
+            alt = ref + "ACGT".substring(random.nextInt(4));
+            break;
+          default:
+            alt = 1 == length ? ref + "A" : ref.substring(0, 1);
+        }
+        contigCalls.put(position, TestCall.create(contig, position, ref,
+            Collections.singletonList(alt), GENOTYPES.get(random.nextInt(GENOTYPES.size()))));
+      }
+      calls.addAll(contigCalls.values());
+    }
+    return calls;
+  }
+
+  @Test
+  public void testCalldiff() throws IOException {
+    TestReference.reader().read(reference -> {
+      WindowEvaluator evaluator = WindowEvaluator.builder(reference).build();
+      Random random = new Random();
+      for (int i = 0; i < 20; ++i) {
+        ArrayList<Call>
+            lhs = randomCalls(random, reference, 6),
+            rhs = random.nextBoolean() ? lhs : randomCalls(random, reference, 6);
+        DiffStats expected = ExecutionMode.SEQUENTIAL
+            .calldiff(evaluator, lhs.stream(), rhs.stream(), 1);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+          if (!mode.isSupported()) {
+            continue;
+          }
+          for (int threads = 1; threads <= 3; ++threads) {
+            assertEquals(mode.name(), expected,
+                mode.calldiff(evaluator, lhs.stream(), rhs.stream(), threads));
+          }
+        }
+      }
+      return null;
+    });
+  }
+}
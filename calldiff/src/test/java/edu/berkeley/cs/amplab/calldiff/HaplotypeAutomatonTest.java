@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.HaplotypeAutomaton;
+import edu.berkeley.cs.amplab.calldiff.HaplotypeEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Unit test for {@link HaplotypeAutomaton}
+ */
+public class HaplotypeAutomatonTest {
+
+  private static final List<Optional<Call.Phaseset>> PHASESETS = Arrays.asList(
+      Optional.empty(),
+      Optional.of(Call.Phaseset.create(1)),
+      Optional.of(Call.Phaseset.create(2)));
+
+  /**
+   * Create a random call at {@code position} whose reference allele matches the reference. The
+   * alternates are SNPs, insertions and deletions, and the call is randomly phased.
+   */
+  private static Call randomCall(Random random, FastaReader.FastaFile reference, int position) {
+    String ref = reference.get("chr1", position, position + 1 + random.nextInt(3));
+    List<String> alternates = new ArrayList<>();
+    for (int i = 0, n = 1 + random.nextInt(2); i < n; ++i) {
+      switch (random.nextInt(3)) {
+        case 0:
+          alternates.add("ACGT".replace(ref.substring(0, 1), "").charAt(random.nextInt(3))
+              + ref.substring(1));
+          break;
+        case 1:
+          alternates.add(ref + "ACGT".charAt(random.nextInt(4)));
+          break;
+        default:
+          alternates.add(ref.substring(0, 1));
+      }
+    }
+    if (alternates.contains(ref)) {
+      alternates = Collections.singletonList(ref + "A");
+    }
+    return TestCall.create("chr1", position, ref, alternates,
+        Arrays.asList(random.nextInt(alternates.size() + 1),
+            random.nextInt(alternates.size() + 1)),
+        PHASESETS.get(random.nextInt(PHASESETS.size())));
+  }
+
+  private static List<Call> randomCalls(Random random, FastaReader.FastaFile reference) {
+    List<Call> calls = new ArrayList<>();
+    for (int position = 10 + random.nextInt(4); position < 30; position += 4 + random.nextInt(3)) {
+      calls.add(randomCall(random, reference, position));
+    }
+    return calls;
+  }
+
+  /**
+   * A random modification of {@code calls}: each call is kept, dropped, has its genotype swapped or
+   * has its phaseset changed.
+   */
+  private static List<Call> randomModification(Random random, List<Call> calls) {
+    List<Call> modified = new ArrayList<>();
+    for (Call call : calls) {
+      List<Integer> genotype = call.genotype();
+      switch (random.nextInt(4)) {
+        case 0:
+          modified.add(call);
+          break;
+        case 1:
+          modified.add(TestCall.create(call.contig(), call.position(), call.reference(),
+              call.alternates(), Arrays.asList(genotype.get(1), genotype.get(0)),
+              call.phaseset()));
+          break;
+        case 2:
+          modified.add(TestCall.create(call.contig(), call.position(), call.reference(),
+              call.alternates(), genotype, PHASESETS.get(random.nextInt(PHASESETS.size()))));
+          break;
+        default:
+      }
+    }
+    return modified;
+  }
+
+  @Test
+  public void testAgreesWithEnumeration() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      int equivalent = 0;
+      for (int i = 0; i < 2000; ++i) {
+        List<Call> lhs = randomCalls(random, reference), rhs = randomModification(random, lhs);
+        boolean expected = HaplotypeEngine.ENUMERATE
+            .generateSameSetOfHaplotypes(reference, "chr1", lhs, rhs, 5, 40);
+        assertEquals(
+            expected,
+            HaplotypeEngine.AUTOMATON
+                .generateSameSetOfHaplotypes(reference, "chr1", lhs, rhs, 5, 40));
+        assertTrue(HaplotypeEngine.AUTOMATON
+            .generateSameSetOfHaplotypes(reference, "chr1", lhs, lhs, 5, 40));
+        if (expected) {
+          ++equivalent;
+        }
+      }
+      assertTrue(0 < equivalent);
+      return null;
+    });
+  }
+
+  @Test
+  public void testPhasesetsWithDifferentPloidies() {
+    FastaReader.FastaFile reference =
+        TestReference.reference(Collections.singletonMap("chr1", "ACGTACGTACGT"));
+    Optional<Call.Phaseset> phaseset = Optional.of(Call.Phaseset.create(1));
+    List<Call> calls = Arrays.asList(
+        TestCall.create("chr1", 2, "G", Collections.singletonList("T"), Arrays.asList(0, 1),
+            phaseset),
+        TestCall.create("chr1", 6, "G", Collections.singletonList("T"), Arrays.asList(0, 1, 1),
+            phaseset));
+    try {
+      HaplotypeAutomaton.create(reference, "chr1", calls, 0, 12);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Calls in same phaseset has different number of alleles", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testUnphasedCallsArePolynomial() throws IOException {
+    TestReference.reader().read(reference -> {
+      List<Call> lhs = new ArrayList<>(), rhs = new ArrayList<>();
+      for (int position = 10; position < 90; position += 2) {
+        String ref = reference.get("chr1", position, position + 1);
+        List<String> alternates =
+            Collections.singletonList("ACGT".replace(ref, "").substring(0, 1));
+        lhs.add(TestCall.create("chr1", position, ref, alternates, Arrays.asList(0, 1)));
+        rhs.add(TestCall.create("chr1", position, ref, alternates, Arrays.asList(1, 0)));
+      }
+      HaplotypeAutomaton automaton = HaplotypeAutomaton.create(reference, "chr1", lhs, 0, 90);
+      // 40 unphased heterozygous SNPs generate 2^40 haplotypes, but only add one state each.
+      assertEquals(91, automaton.size());
+      assertTrue(automaton.isEquivalentTo(
+          HaplotypeAutomaton.create(reference, "chr1", rhs, 0, 90)));
+      assertTrue(!automaton.isEquivalentTo(
+          HaplotypeAutomaton.create(reference, "chr1", rhs.subList(1, rhs.size()), 0, 90)));
+      return null;
+    });
+  }
+}
@@ -18,6 +18,7 @@ package edu.berkeley.cs.amplab.calldiff;
 
 import static edu.berkeley.cs.amplab.calldiff.Call.Phaseset.DEFAULT;
 import static edu.berkeley.cs.amplab.calldiff.HaplotypeGenerator.generateHaplotypes;
+import static edu.berkeley.cs.amplab.calldiff.HaplotypeGenerator.haplotypeCount;
 import static edu.berkeley.cs.amplab.calldiff.HaplotypeGenerator.partitionByPhaseset;
 import static edu.berkeley.cs.amplab.calldiff.TestCall.create;
 import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
@@ -26,6 +27,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -33,9 +35,12 @@ import org.junit.Test;
 
 import edu.berkeley.cs.amplab.calldiff.Call;
 import edu.berkeley.cs.amplab.calldiff.Call.Phaseset;
+import edu.berkeley.cs.amplab.calldiff.HaplotypeGenerator;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -100,4 +105,68 @@ public class HaplotypeGeneratorTest {
             0,
             8));
   }
+
+  @Test
+  public void testHaplotypeCount() {
+    String contig = "chr1";
+    assertEquals(1, haplotypeCount(Collections.emptyList()));
+    assertEquals(
+        4,
+        haplotypeCount(asList(
+            create(contig, 1, "C", singletonList("G"), asList(0, 1), DEFAULT),
+            create(contig, 2, "G", singletonList("T"), asList(1)),
+            create(contig, 4, "A", singletonList("C"), asList(0, 1)),
+            create(contig, 6, "G", singletonList("T"), asList(0, 1), DEFAULT))));
+  }
+
+  @Test
+  public void testHaplotypes() {
+    String contig = "chr1";
+    Random random = new Random();
+    for (int i = 0; i < 100; ++i) {
+      StringBuilder sequence = new StringBuilder();
+      for (int j = 0; j < 40; ++j) {
+        sequence.append("ACGT".charAt(random.nextInt(4)));
+      }
+      FastaReader.FastaFile reference = reference(ImmutableMap.of(contig, sequence.toString()));
+      List<Call> calls = new ArrayList<>();
+      for (int position = random.nextInt(3); position < 36; position += 3 + random.nextInt(3)) {
+        String ref = sequence.substring(position, position + 1 + random.nextInt(2));
+        calls.add(create(contig, position, ref,
+            asList(ref.substring(0, 1), ref + "A", "ACGT".replace(ref.substring(0, 1), "")
+                .substring(0, 1) + ref.substring(1)),
+            asList(random.nextInt(4), random.nextInt(4)),
+            asList(Optional.<Phaseset>empty(), Optional.of(Phaseset.create(1)),
+                Optional.of(Phaseset.create(2))).get(random.nextInt(3))));
+      }
+      // Apply the calls in a random order, as the subset enumeration does.
+      List<Call> shuffled = new ArrayList<>(calls);
+      Collections.shuffle(shuffled, random);
+      HaplotypeGenerator.Haplotypes haplotypes =
+          HaplotypeGenerator.Haplotypes.create(reference, contig, 0, 40);
+      for (Call call : shuffled) {
+        haplotypes = haplotypes.add(call);
+      }
+      assertEquals(generateHaplotypes(reference, contig, calls, 0, 40), haplotypes.strings());
+    }
+  }
+
+  @Test
+  public void testHaplotypesWithDifferentPloidies() {
+    FastaReader.FastaFile reference = reference(ImmutableMap.of("chr1", "ACGTACGTACGT"));
+    Optional<Phaseset> phaseset = Optional.of(Phaseset.create(1));
+    List<Call> calls = asList(
+        create("chr1", 2, "G", singletonList("T"), asList(0, 1), phaseset),
+        create("chr1", 6, "G", singletonList("T"), asList(0, 1, 1), phaseset));
+    for (List<Call> order : asList(calls, asList(calls.get(1), calls.get(0)))) {
+      HaplotypeGenerator.Haplotypes haplotypes =
+          HaplotypeGenerator.Haplotypes.create(reference, "chr1", 0, 12).add(order.get(0));
+      try {
+        haplotypes.add(order.get(1));
+        fail();
+      } catch (IllegalStateException e) {
+        assertEquals("Calls in same phaseset has different number of alleles", e.getMessage());
+      }
+    }
+  }
 }
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.DiffStats;
+import edu.berkeley.cs.amplab.calldiff.HashJoin;
+import edu.berkeley.cs.amplab.calldiff.OutputTuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link HashJoin}
+ */
+public class HashJoinTest {
+
+  @Test
+  public void testCalldiff() {
+    Random random = new Random();
+    for (int i = 0; i < 20; ++i) {
+      List<Call> lhs = new ArrayList<>(), rhs = new ArrayList<>();
+      for (String contig : new String[] { "chr1", "chr2" }) {
+        List<Call> calls = randomCalls(random, contig, 100, 5, 30);
+        for (Call call : calls) {
+          if (random.nextBoolean()) {
+            lhs.add(call);
+          }
+          if (random.nextBoolean()) {
+            rhs.add(call);
+          }
+        }
+      }
+      Collections.shuffle(lhs, random);
+      Collections.shuffle(rhs, random);
+      Multiset<Call>
+          lhsCalls = HashMultiset.create(lhs),
+          rhsCalls = HashMultiset.create(rhs),
+          lhsResiduals = HashMultiset.create(),
+          rhsResiduals = HashMultiset.create();
+      DiffStats stats = HashJoin.calldiff(lhs.stream(), rhs.stream(), (lhsRest, rhsRest) -> {
+            lhsRest.forEach(lhsResiduals::add);
+            rhsRest.forEach(rhsResiduals::add);
+            return Stream.<OutputTuple>empty().collect(DiffStats.builder());
+          });
+      assertEquals(Multisets.difference(lhsCalls, rhsCalls), lhsResiduals);
+      assertEquals(Multisets.difference(rhsCalls, lhsCalls), rhsResiduals);
+      int exactMatches = Multisets.intersection(lhsCalls, rhsCalls).size();
+      assertEquals(exactMatches, stats.resolutions().count(OutputTuple.Resolution.IDENTICAL));
+      assertEquals(exactMatches, stats.matchingLhs().size());
+      assertEquals(exactMatches, stats.matchingRhs().size());
+    }
+  }
+}
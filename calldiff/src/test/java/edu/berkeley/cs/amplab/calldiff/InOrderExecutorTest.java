@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.InOrderExecutor;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link InOrderExecutor}
+ */
+public class InOrderExecutorTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testException() {
+    try {
+      InOrderExecutor.create(executor, 2)
+          .map(Stream.of(1, 2, 3), i -> {
+                if (2 == i) {
+                  throw new IllegalStateException("expected");
+                }
+                return i;
+              })
+          .count();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("expected", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testMap() {
+    Random random = new Random();
+    List<Integer> input = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+    for (int maxInFlight = 1; maxInFlight < 10; maxInFlight += 4) {
+      assertEquals(
+          input.stream().map(i -> i * i).collect(Collectors.toList()),
+          InOrderExecutor.create(executor, maxInFlight)
+              .map(input.stream(), i -> {
+                    try {
+                      Thread.sleep(random.nextInt(3));
+                    } catch (InterruptedException e) {
+                      throw new AssertionError(e);
+                    }
+                    return i * i;
+                  })
+              .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testMaxInFlight() {
+    AtomicInteger consumed = new AtomicInteger();
+    List<Integer> output = InOrderExecutor.create(executor, 3)
+        .map(Stream.iterate(0, i -> i + 1).peek(i -> consumed.incrementAndGet()), i -> i)
+        .limit(5)
+        .collect(Collectors.toList());
+    assertEquals(IntStream.range(0, 5).boxed().collect(Collectors.toList()), output);
+    assertEquals(7, consumed.get());
+  }
+}
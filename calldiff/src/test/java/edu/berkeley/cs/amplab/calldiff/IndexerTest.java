@@ -24,6 +24,10 @@ import org.junit.Test;
 
 import edu.berkeley.cs.amplab.calldiff.Indexer;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -37,4 +41,12 @@ public class IndexerTest {
         ImmutableMap.of("foo", 0, "bar", 1, "baz", 2, "fizz", 3, "buzz", 4),
         Stream.of("foo", "bar", "baz", "fizz", "buzz").collect(Indexer.create()));
   }
+
+  @Test
+  public void testParallelIndexer() {
+    List<Integer> list = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+    assertEquals(
+        list.stream().collect(Collectors.toMap(Function.identity(), Function.identity())),
+        list.parallelStream().collect(Indexer.create()));
+  }
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.LongestFirstExecutor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Unit test for {@link LongestFirstExecutor}
+ */
+public class LongestFirstExecutorTest {
+
+  private static final Map<String, Double> COSTS =
+      ImmutableMap.of("a", 1.0, "b", 10.0, "c", 1.0, "d", 100.0, "e", 5.0);
+
+  @Test
+  public void testSubmit() throws ExecutionException, InterruptedException {
+    LongestFirstExecutor executor = LongestFirstExecutor.create(1, "test-%d");
+    try {
+      CountDownLatch latch = new CountDownLatch(1);
+      List<String> order = new CopyOnWriteArrayList<>();
+      executor.submit(() -> {
+            latch.await();
+            return null;
+          }, 0);
+      Future<String> last = null;
+      for (String name : Arrays.asList("a", "b", "c", "d", "e")) {
+        last = executor.submit(() -> {
+              order.add(name);
+              return name;
+            }, COSTS.get(name));
+      }
+      latch.countDown();
+      last.get();
+      while (order.size() < COSTS.size()) {
+        Thread.sleep(10);
+      }
+      assertEquals(Arrays.asList("d", "b", "e", "a", "c"), order);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
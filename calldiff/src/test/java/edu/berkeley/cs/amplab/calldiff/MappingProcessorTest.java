@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.CollectorSubscriber;
+import edu.berkeley.cs.amplab.calldiff.Flow;
+import edu.berkeley.cs.amplab.calldiff.IteratorPublisher;
+import edu.berkeley.cs.amplab.calldiff.MappingProcessor;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for {@link MappingProcessor}
+ */
+public class MappingProcessorTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testBackpressure() throws InterruptedException {
+    AtomicInteger pulled = new AtomicInteger(), received = new AtomicInteger();
+    MappingProcessor<Integer, Integer> processor =
+        MappingProcessor.create(i -> i, executor, 5);
+    IteratorPublisher
+        .create(Stream.iterate(0, i -> i + 1).peek(i -> pulled.incrementAndGet()).iterator(),
+            executor)
+        .subscribe(processor);
+    processor.subscribe(new Flow.Subscriber<Integer>() {
+          @Override public void onComplete() {}
+          @Override public void onError(Throwable throwable) {}
+          @Override public void onNext(Integer item) {
+            received.incrementAndGet();
+          }
+          @Override public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(3);
+          }
+        });
+    while (received.get() < 3 || processor.queueDepth() < 5) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(3, received.get());
+    assertEquals(3, processor.emitted());
+    assertEquals(8, pulled.get());
+    assertEquals(5, processor.queueDepth());
+    assertEquals(5, processor.maxQueueDepth());
+  }
+
+  @Test
+  public void testException() {
+    MappingProcessor<Integer, Integer> processor = MappingProcessor.create(
+        i -> {
+          if (50 == i) {
+            throw new IllegalStateException("expected");
+          }
+          return i;
+        },
+        executor,
+        4);
+    CollectorSubscriber<Integer, ?, List<Integer>> subscriber =
+        CollectorSubscriber.create(Collectors.toList(), 4);
+    IteratorPublisher.create(IntStream.range(0, 100).iterator(), executor).subscribe(processor);
+    processor.subscribe(subscriber);
+    try {
+      subscriber.result().join();
+      fail();
+    } catch (CompletionException e) {
+      assertEquals("expected", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testPipeline() {
+    for (int capacity = 1; capacity < 10; capacity += 4) {
+      MappingProcessor<Integer, Integer> processor =
+          MappingProcessor.create(i -> i * i, executor, capacity);
+      CollectorSubscriber<Integer, ?, List<Integer>> subscriber =
+          CollectorSubscriber.create(Collectors.toList(), capacity);
+      IteratorPublisher.create(IntStream.range(0, 1000).iterator(), executor)
+          .subscribe(processor);
+      processor.subscribe(subscriber);
+      assertEquals(
+          IntStream.range(0, 1000).map(i -> i * i).boxed().collect(Collectors.toList()),
+          subscriber.result().join());
+      assertEquals(0, processor.queueDepth());
+      assertEquals(1000, processor.emitted());
+      assertEquals(1000, subscriber.collected());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.CallScanner;
+import edu.berkeley.cs.amplab.calldiff.FastaReader;
+import edu.berkeley.cs.amplab.calldiff.NormalizingCallScanner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Unit test for {@link NormalizingCallScanner}
+ */
+public class NormalizingCallScannerTest {
+
+  private static final String BASES = "GCTAGCAAAAAGTCCA";
+
+  private static final FastaReader.FastaFile REFERENCE =
+      TestReference.reference(ImmutableMap.of("chr1", BASES));
+
+  private static Call call(int position, String reference, String alternate) {
+    return TestCall.create("chr1", position, reference, Collections.singletonList(alternate),
+        Arrays.asList(0, 1));
+  }
+
+  private static CallScanner scanner(List<Call> calls) {
+    return new CallScanner() {
+          @Override public <X> X scan(Callback<? extends X> callback) {
+            return callback.scan(calls.stream());
+          }
+        };
+  }
+
+  @Test
+  public void testNormalize() {
+    Call
+        deletion = call(5, "CA", "C"),
+        insertion = call(5, "C", "CA"),
+        snp = call(8, "A", "G"),
+        symbolic = call(9, "AA", "<DEL>");
+    assertEquals(deletion, NormalizingCallScanner.normalize(REFERENCE, call(9, "AA", "A")));
+    assertEquals(deletion, NormalizingCallScanner.normalize(REFERENCE, call(9, "AAG", "AG")));
+    assertEquals(insertion, NormalizingCallScanner.normalize(REFERENCE, call(10, "A", "AA")));
+    assertEquals(insertion, NormalizingCallScanner.normalize(REFERENCE, call(7, "AA", "AAA")));
+    assertSame(deletion, NormalizingCallScanner.normalize(REFERENCE, deletion));
+    assertSame(snp, NormalizingCallScanner.normalize(REFERENCE, snp));
+    assertSame(symbolic, NormalizingCallScanner.normalize(REFERENCE, symbolic));
+    for (Call unchanged : Arrays.asList(call(10, "A", "A"), call(9, "AA", "AA"))) {
+      assertSame(unchanged, NormalizingCallScanner.normalize(REFERENCE, unchanged));
+    }
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    List<Call> calls = Arrays.asList(
+        call(2, "T", "C"),
+        call(8, "A", "G"),
+        call(9, "AA", "A"),
+        call(12, "T", "G"));
+    assertEquals(
+        Arrays.asList(
+            call(2, "T", "C"),
+            call(5, "CA", "C"),
+            call(8, "A", "G"),
+            call(12, "T", "G")),
+        NormalizingCallScanner.create(scanner(calls), REFERENCE)
+            .scan(stream -> stream.collect(Collectors.toList())));
+  }
+}
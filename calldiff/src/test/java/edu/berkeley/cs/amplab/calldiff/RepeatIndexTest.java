@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.FastaReader;
+import edu.berkeley.cs.amplab.calldiff.RepeatIndex;
+import edu.berkeley.cs.amplab.calldiff.WindowSpan;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit test for {@link RepeatIndex}
+ */
+public class RepeatIndexTest {
+
+  private static final String
+      PREFIX = WindowSpanTest.PREFIX,
+      REPEAT = WindowSpanTest.REPEAT,
+      HOMOPOLYMER = Strings.repeat("A", 12),
+      SUFFIX = WindowSpanTest.SUFFIX;
+
+  private static final Map<String, String> CONTIGS = ImmutableMap.of(
+      "chr1", PREFIX + REPEAT + SUFFIX,
+      "chr2", SUFFIX + HOMOPOLYMER + PREFIX + Strings.repeat("N", 20));
+
+  private static final FastaReader.FastaFile REFERENCE = TestReference.reference(CONTIGS);
+
+  private static void assertSameRepeats(RepeatIndex expected, RepeatIndex actual) {
+    assertEquals(expected.size(), actual.size());
+    for (Map.Entry<String, String> contig : CONTIGS.entrySet()) {
+      for (int position = 0; position < contig.getValue().length(); ++position) {
+        assertEquals(
+            expected.period(contig.getKey(), position),
+            actual.period(contig.getKey(), position));
+        Call call = deletion(contig.getKey(), position);
+        assertEquals(expected.span(call), actual.span(call));
+      }
+    }
+  }
+
+  private static Call deletion(String contig, int position) {
+    String bases = REFERENCE.get(contig, position, Math.min(contigLength(contig), position + 4));
+    return TestCall.create(contig, position, bases,
+        Collections.singletonList(bases.substring(0, 1)), Arrays.asList(0, 1));
+  }
+
+  private static int contigLength(String contig) {
+    return REFERENCE.contigLength(contig);
+  }
+
+  @Test
+  public void testPeriod() {
+    RepeatIndex index = RepeatIndex.create(REFERENCE, 2);
+    assertEquals(0, index.period("chr1", 3));
+    assertEquals(3, index.period("chr1", PREFIX.length()));
+    assertEquals(3, index.period("chr1", PREFIX.length() + REPEAT.length() - 1));
+    assertEquals(1, index.period("chr2", SUFFIX.length() + 5));
+    assertEquals(0, index.period("chr2", contigLength("chr2") - 1));
+    assertEquals(0, index.period("chrX", 0));
+  }
+
+  @Test
+  public void testSpan() {
+    RepeatIndex index = RepeatIndex.create(REFERENCE, 2);
+    Range<Integer> repeat = Range.closedOpen(PREFIX.length(), PREFIX.length() + REPEAT.length());
+    for (int offset : new int[] { 1, 40, 80 }) {
+      Call call = deletion("chr1", PREFIX.length() + offset);
+      assertTrue(index.span(call).encloses(repeat));
+      assertEquals(WindowSpan.TANDEM_REPEAT.span(REFERENCE, call), index.span(call));
+    }
+    assertEquals(Range.closedOpen(2, 8), index.span(deletion("chr1", 3)));
+    for (int position : new int[] { 1, 4 }) {
+      Call snp = TestCall.create("chr1", position, REFERENCE.get("chr1", position, position + 1),
+          Collections.singletonList("N"), Arrays.asList(0, 1));
+      assertEquals(WindowSpan.TANDEM_REPEAT.span(REFERENCE, snp), index.span(snp));
+    }
+  }
+
+  @Test
+  public void testSpanMatchesTandemRepeat() {
+    Random random = new Random();
+    for (int i = 0; i < 20; ++i) {
+      // Few distinct bases make for many short repeats, of which only some are long enough, and
+      // the long homopolymer goes past the bases that TANDEM_REPEAT scans.
+      StringBuilder bases = new StringBuilder();
+      for (int j = 0; j < 300; ++j) {
+        bases.append("ACacN".charAt(random.nextInt(random.nextBoolean() ? 2 : 5)));
+      }
+      bases.insert(random.nextInt(bases.length()),
+          Strings.repeat("T", 2 * WindowSpan.MAX_EXTENSION + random.nextInt(100)));
+      FastaReader.FastaFile reference =
+          TestReference.reference(ImmutableMap.of("chr1", bases.toString()));
+      RepeatIndex index = RepeatIndex.create(reference, 1);
+      for (int position = 0; position < bases.length(); position += 1 + random.nextInt(5)) {
+        String ref = reference.get("chr1", position,
+            Math.min(bases.length(), position + 1 + random.nextInt(4)));
+        Call call = TestCall.create("chr1", position, ref,
+            Collections.singletonList(ref.substring(0, 1)), Arrays.asList(0, 1));
+        assertEquals(call.toString(),
+            WindowSpan.TANDEM_REPEAT.span(reference, call), index.span(call));
+      }
+    }
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    File file = File.createTempFile("tmp", ".repeats");
+    file.deleteOnExit();
+    RepeatIndex index = RepeatIndex.create(REFERENCE, 1).write(file);
+    assertSameRepeats(index, RepeatIndex.read(file, REFERENCE));
+    assertSameRepeats(index, RepeatIndex.create(REFERENCE, 4));
+    for (Map<String, String> contigs : Arrays.asList(
+        ImmutableMap.of("chr1", CONTIGS.get("chr1")),
+        ImmutableMap.of("chr1", CONTIGS.get("chr1"), "chr2", CONTIGS.get("chr2") + "A"),
+        ImmutableMap.<String, String>builder().putAll(CONTIGS).put("chr3", "A").build())) {
+      try {
+        RepeatIndex.read(file, TestReference.reference(contigs));
+        fail();
+      } catch (IOException e) {
+        assertEquals(
+            String.format("Repeat index \"%s\" was built from a different reference", file),
+            e.getMessage());
+      }
+    }
+    for (int headerLength : new int[] { -1, 0, Integer.MAX_VALUE }) {
+      try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+        out.writeInt(headerLength);
+        out.writeLong(0);
+      }
+      try {
+        RepeatIndex.read(file, REFERENCE);
+        fail();
+      } catch (IOException e) {
+        assertEquals(String.format("Not a repeat index: \"%s\"", file), e.getMessage());
+      }
+    }
+  }
+}
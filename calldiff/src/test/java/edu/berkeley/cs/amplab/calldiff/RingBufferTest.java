@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.RingBuffer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit test for {@link RingBuffer}
+ */
+public class RingBufferTest {
+
+  @Test
+  public void testOfferAndPoll() {
+    RingBuffer<Integer> buffer = RingBuffer.create(3, RingBuffer.WaitStrategy.PARK);
+    assertEquals(4, buffer.capacity());
+    assertNull(buffer.poll());
+    for (int round = 0; round < 3; ++round) {
+      for (int i = 0; i < 4; ++i) {
+        assertTrue(buffer.offer(i));
+      }
+      assertFalse(buffer.offer(4));
+      assertEquals(4, buffer.size());
+      for (int i = 0; i < 4; ++i) {
+        assertEquals(Integer.valueOf(i), buffer.poll());
+      }
+      assertNull(buffer.poll());
+    }
+  }
+
+  @Test
+  public void testInterrupt() throws InterruptedException {
+    RingBuffer<Integer> buffer = RingBuffer.create(1, RingBuffer.WaitStrategy.PARK);
+    Thread.currentThread().interrupt();
+    try {
+      buffer.take();
+      fail();
+    } catch (InterruptedException e) {
+      assertFalse(Thread.currentThread().isInterrupted());
+    }
+  }
+
+  @Test
+  public void testPutAndTake() throws ExecutionException, InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values()) {
+        RingBuffer<Integer> buffer = RingBuffer.create(64, waitStrategy);
+        Future<?> producer = executor.submit(() -> {
+              for (int i = 0; i < 10000; ++i) {
+                buffer.put(i);
+              }
+              return null;
+            });
+        for (int i = 0; i < 10000; ++i) {
+          assertEquals(Integer.valueOf(i), buffer.take());
+        }
+        producer.get();
+        assertNull(buffer.poll());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
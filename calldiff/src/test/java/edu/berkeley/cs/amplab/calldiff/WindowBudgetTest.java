@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.OutputTuple;
+import edu.berkeley.cs.amplab.calldiff.WindowBudget;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link WindowBudget}
+ */
+public class WindowBudgetTest {
+
+  private static void assertExceeded(OutputTuple.Resolution expected, Runnable runnable) {
+    try {
+      runnable.run();
+      fail();
+    } catch (WindowBudget.ExceededException e) {
+      assertEquals(expected, e.resolution());
+    }
+  }
+
+  @Test
+  public void testCandidates() {
+    WindowBudget.Tracker tracker = WindowBudget.builder().setMaxCandidates(2).build().start();
+    tracker.chargeCandidate();
+    tracker.chargeCandidate();
+    assertExceeded(OutputTuple.Resolution.TOO_MANY_CANDIDATES, tracker::chargeCandidate);
+  }
+
+  @Test
+  public void testHaplotypes() {
+    WindowBudget.Tracker tracker = WindowBudget.builder().setMaxHaplotypes(10).build().start();
+    tracker.chargeHaplotypes(4);
+    tracker.chargeHaplotypes(6);
+    assertExceeded(OutputTuple.Resolution.TOO_MANY_HAPLOTYPES, () -> tracker.chargeHaplotypes(1));
+    WindowBudget.Tracker unlimited = WindowBudget.UNLIMITED.start();
+    unlimited.chargeHaplotypes(Long.MAX_VALUE);
+    unlimited.chargeHaplotypes(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testNegativeLimit() {
+    try {
+      WindowBudget.builder().setMaxCandidates(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("maxCandidates must not be negative, was -1", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testTime() throws InterruptedException {
+    WindowBudget.Tracker tracker =
+        WindowBudget.builder().setMaxTime(1, TimeUnit.MILLISECONDS).build().start();
+    Thread.sleep(10);
+    assertExceeded(OutputTuple.Resolution.TIMED_OUT, tracker::checkTime);
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.DiffStats;
+import edu.berkeley.cs.amplab.calldiff.HaplotypeEngine;
+import edu.berkeley.cs.amplab.calldiff.OutputTuple;
+import edu.berkeley.cs.amplab.calldiff.Window;
+import edu.berkeley.cs.amplab.calldiff.WindowBudget;
+import edu.berkeley.cs.amplab.calldiff.WindowEvaluator;
+import edu.berkeley.cs.amplab.calldiff.WindowSpan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Unit test for {@link WindowEvaluator}
+ */
+public class WindowEvaluatorTest {
+
+  private static Call deletion(FastaReader.FastaFile reference, int position) {
+    String bases = reference.get("chr1", position, position + 4);
+    return TestCall.create("chr1", position, bases,
+        Collections.singletonList(bases.substring(0, 1)), Arrays.asList(0, 1));
+  }
+
+  /**
+   * Create a window of heterozygous SNPs that is expensive enough to be evaluated in parallel.
+   * The right hand side randomly keeps, drops, swaps the genotype of or changes the alternate of
+   * each of the left hand calls.
+   */
+  private static Window randomWindow(Random random, FastaReader.FastaFile reference) {
+    ArrayList<Call> lhs = new ArrayList<>(), rhs = new ArrayList<>();
+    for (int position = 10; position < 60; position += 10) {
+      String ref = reference.get("chr1", position, position + 1),
+          alts = "ACGT".replace(ref, "");
+      lhs.add(TestCall.create("chr1", position, ref,
+          Collections.singletonList(alts.substring(0, 1)), Arrays.asList(0, 1)));
+      // Never drop the first two calls, so the window stays expensive.
+      switch (random.nextInt(position < 30 ? 3 : 4)) {
+        case 0:
+          rhs.add(lhs.get(lhs.size() - 1));
+          break;
+        case 1:
+          rhs.add(TestCall.create("chr1", position, ref,
+              Collections.singletonList(alts.substring(0, 1)), Arrays.asList(1, 0)));
+          break;
+        case 2:
+          rhs.add(TestCall.create("chr1", position, ref,
+              Collections.singletonList(alts.substring(1, 2)), Arrays.asList(0, 1)));
+          break;
+        default:
+      }
+    }
+    return Window.create("chr1", 10, 51, lhs, rhs);
+  }
+
+  @Test
+  public void testBudget() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      for (int i = 0; i < 10; ++i) {
+        Window window = randomWindow(random, reference);
+        OutputTuple expected = WindowEvaluator.builder(reference).build().apply(window);
+        if (OutputTuple.Resolution.SEARCH != expected.resolution()) {
+          continue;
+        }
+        for (WindowEvaluator.CandidateSearch search : WindowEvaluator.CandidateSearch.values()) {
+          assertEquals(
+              OutputTuple.builder(window)
+                  .setResolution(OutputTuple.Resolution.TOO_MANY_CANDIDATES)
+                  .build(),
+              WindowEvaluator.builder(reference)
+                  .setCandidateSearch(search)
+                  .setBudget(WindowBudget.builder().setMaxCandidates(0).build())
+                  .build()
+                  .apply(window));
+          assertEquals(
+              OutputTuple.builder(window)
+                  .setResolution(OutputTuple.Resolution.TOO_MANY_HAPLOTYPES)
+                  .build(),
+              WindowEvaluator.builder(reference)
+                  .setCandidateSearch(search)
+                  .setBudget(WindowBudget.builder().setMaxHaplotypes(1).build())
+                  .build()
+                  .apply(window));
+          assertEquals(
+              expected,
+              WindowEvaluator.builder(reference)
+                  .setCandidateSearch(search)
+                  .setBudget(WindowBudget.builder()
+                      .setMaxCandidates(1 << 20)
+                      .setMaxHaplotypes(1 << 30)
+                      .setMaxTime(1, TimeUnit.HOURS)
+                      .build())
+                  .build()
+                  .apply(window));
+        }
+      }
+      return null;
+    });
+  }
+
+  @Test
+  public void testCandidateExecutor() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      TestReference.reader().read(reference -> {
+        Random random = new Random();
+        WindowEvaluator sequential = WindowEvaluator.builder(reference).build();
+        List<WindowEvaluator> parallel = new ArrayList<>();
+        for (int batchSize = 1; batchSize < 10; batchSize += 4) {
+          parallel.add(WindowEvaluator.builder(reference)
+              .setCandidateExecutor(executor, batchSize)
+              .build());
+        }
+        for (int i = 0; i < 10; ++i) {
+          Window window = randomWindow(random, reference);
+          assertTrue(1 << 12 <= window.estimatedCost());
+          OutputTuple expected = sequential.apply(window);
+          for (WindowEvaluator evaluator : parallel) {
+            assertEquals(expected, evaluator.apply(window));
+          }
+        }
+        return null;
+      });
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFingerprintJoin() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      WindowEvaluator
+          pairwise = WindowEvaluator.builder(reference).build(),
+          fingerprintJoin = WindowEvaluator.builder(reference)
+              .setCandidateSearch(WindowEvaluator.CandidateSearch.FINGERPRINT_JOIN)
+              .build();
+      for (int i = 0; i < 10; ++i) {
+        Window window = randomWindow(random, reference);
+        assertEquals(pairwise.apply(window), fingerprintJoin.apply(window));
+      }
+      return null;
+    });
+  }
+
+  @Test
+  public void testHaplotypeEngines() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      WindowEvaluator
+          enumerate = WindowEvaluator.builder(reference)
+              .setHaplotypeEngine(HaplotypeEngine.ENUMERATE)
+              .build(),
+          automaton = WindowEvaluator.builder(reference)
+              .setHaplotypeEngine(HaplotypeEngine.AUTOMATON)
+              .build();
+      for (int i = 0; i < 10; ++i) {
+        Window window = randomWindow(random, reference);
+        assertEquals(enumerate.apply(window), automaton.apply(window));
+      }
+      return null;
+    });
+  }
+
+  @Test
+  public void testIdenticalWindows() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      WindowEvaluator evaluator = WindowEvaluator.builder(reference).setMaxWindowSize(0).build();
+      for (int i = 0; i < 10; ++i) {
+        ArrayList<Call> lhs = randomWindow(random, reference).lhs(), rhs = new ArrayList<>();
+        for (Call call : lhs) {
+          rhs.add(TestCall.create(call.contig(), call.position(), call.reference(),
+              call.alternates(), call.genotype()));
+        }
+        Window window = Window.create("chr1", 10, 51, lhs, rhs);
+        OutputTuple tuple = evaluator.apply(window);
+        assertEquals(OutputTuple.Resolution.IDENTICAL, tuple.resolution());
+        assertEquals(lhs, tuple.matchingLhs());
+        assertEquals(rhs, tuple.matchingRhs());
+        assertTrue(tuple.notMatchingLhs().isEmpty() && tuple.notMatchingRhs().isEmpty());
+      }
+      // Overlapping calls can't all match, so they have to be searched.
+      String ref = reference.get("chr1", 10, 12);
+      Call
+          deletion = TestCall.create("chr1", 10, ref,
+              Collections.singletonList(ref.substring(0, 1)), Arrays.asList(0, 1)),
+          snp = TestCall.create("chr1", 11, ref.substring(1),
+              Collections.singletonList("ACGT".replace(ref.substring(1), "").substring(0, 1)),
+              Arrays.asList(0, 1));
+      ArrayList<Call> calls = new ArrayList<>(Arrays.asList(deletion, snp));
+      assertEquals(
+          OutputTuple.Resolution.SEARCH,
+          WindowEvaluator.builder(reference)
+              .build()
+              .apply(Window.create("chr1", 10, 12, calls, calls))
+              .resolution());
+      return null;
+    });
+  }
+
+  @Test
+  public void testMaxWindowSize() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      for (int i = 0; i < 10; ++i) {
+        Window window = randomWindow(random, reference);
+        OutputTuple tuple = WindowEvaluator.builder(reference)
+            .setMaxWindowSize(window.size())
+            .build()
+            .apply(window);
+        assertEquals(OutputTuple.Resolution.SEARCH, tuple.resolution());
+        assertEquals(window.lhs().size(), tuple.matchingLhs().size()
+            + tuple.notMatchingLhs().size());
+        WindowEvaluator tooSmall =
+            WindowEvaluator.builder(reference).setMaxWindowSize(window.size() - 1).build();
+        assertEquals(
+            OutputTuple.builder(window).setResolution(OutputTuple.Resolution.TOO_LARGE).build(),
+            tooSmall.apply(window));
+        assertEquals(0, tooSmall.estimatedCost(window), 0);
+        assertEquals(window.estimatedCost(),
+            WindowEvaluator.builder(reference).build().estimatedCost(window), 0);
+      }
+      WindowEvaluator.builder(reference).setMaxWindowSize(WindowEvaluator.MAX_MAX_WINDOW_SIZE);
+      try {
+        WindowEvaluator.builder(reference)
+            .setMaxWindowSize(WindowEvaluator.MAX_MAX_WINDOW_SIZE + 1);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("maxWindowSize must be at most 16, was 17", e.getMessage());
+      }
+      return null;
+    });
+  }
+
+  @Test
+  public void testOneSidedWindows() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      WindowEvaluator evaluator = WindowEvaluator.builder(reference).build();
+      for (int i = 0; i < 20; ++i) {
+        ArrayList<Call> calls = new ArrayList<>();
+        for (int position = 10; position < 60; position += 10) {
+          String ref = reference.get("chr1", position, position + 1),
+              alt = "ACGT".replace(ref, "").substring(0, 1);
+          switch (random.nextInt(6)) {
+            case 0:
+              calls.add(TestCall.create("chr1", position, ref, Collections.singletonList(alt),
+                  Arrays.asList(0, 1)));
+              break;
+            case 1:
+              calls.add(TestCall.create("chr1", position, ref, Collections.singletonList(alt),
+                  Arrays.asList(0, 0)));
+              break;
+            case 2:
+              calls.add(TestCall.create("chr1", position, ref, Collections.singletonList(ref),
+                  Arrays.asList(1, 1)));
+              break;
+            case 3:
+              calls.add(TestCall.create("chr1", position, ref,
+                  Collections.singletonList(ref + alt), Arrays.asList(1, 1)));
+              break;
+            case 4:
+              calls.add(TestCall.create("chr1", position, ref,
+                  Collections.singletonList(ref.toLowerCase()), Arrays.asList(0, 1)));
+              break;
+            default:
+          }
+        }
+        if (calls.isEmpty()) {
+          continue;
+        }
+        boolean lhs = random.nextBoolean();
+        Window window = lhs
+            ? Window.create("chr1", 10, 51, calls, new ArrayList<>())
+            : Window.create("chr1", 10, 51, new ArrayList<>(), calls);
+        assertEquals(
+            window.createOutputTuple(
+                window.candidates()
+                    .filter(candidates -> candidates.generatesSameSetOfHaplotypes(
+                        reference, HaplotypeEngine.ENUMERATE))
+                    .findFirst(),
+                OutputTuple.Resolution.ONE_SIDED),
+            evaluator.apply(window));
+      }
+      // An insertion and a deletion of the same length could cancel out, so they're searched.
+      String deletion = reference.get("chr1", 10, 12), insertion = reference.get("chr1", 20, 21);
+      ArrayList<Call> calls = new ArrayList<>(Arrays.asList(
+          TestCall.create("chr1", 10, deletion,
+              Collections.singletonList(deletion.substring(0, 1)), Arrays.asList(1, 1)),
+          TestCall.create("chr1", 20, insertion,
+              Collections.singletonList(insertion + "A"), Arrays.asList(1, 1))));
+      assertEquals(
+          OutputTuple.Resolution.SEARCH,
+          evaluator.apply(Window.create("chr1", 10, 22, calls, new ArrayList<>())).resolution());
+      return null;
+    });
+  }
+
+  @Test
+  public void testSplitExactMatches() throws IOException {
+    TestReference.reader().read(reference -> {
+      ArrayList<Call> lhs = new ArrayList<>(), rhs = new ArrayList<>();
+      for (int position : new int[] { 10, 40, 80, 90 }) {
+        String ref = reference.get("chr1", position, position + 1),
+            alts = "ACGT".replace(ref, "");
+        Call call = TestCall.create("chr1", position, ref,
+            Collections.singletonList(alts.substring(0, 1)), Arrays.asList(0, 1));
+        lhs.add(call);
+        rhs.add(10 == position
+            ? TestCall.create("chr1", position, ref,
+                Collections.singletonList(alts.substring(1, 2)), Arrays.asList(0, 1))
+            : call);
+      }
+      assertEquals(2, Window.create("chr1", 10, 91, lhs, rhs).splitExactMatches().size());
+      WindowEvaluator
+          evaluator = WindowEvaluator.builder(reference).build(),
+          splitting = WindowEvaluator.builder(reference).setSplitExactMatches(true).build();
+      List<OutputTuple>
+          expected = evaluator.partition(lhs, rhs).map(evaluator).collect(Collectors.toList()),
+          actual = splitting.partition(lhs, rhs).map(splitting).collect(Collectors.toList());
+      assertEquals(1, expected.size());
+      assertEquals(lhs.subList(1, 4), expected.get(0).matchingLhs());
+      assertEquals(2, actual.size());
+      List<Function<OutputTuple, List<Call>>> accessors = Arrays.asList(
+          OutputTuple::matchingLhs,
+          OutputTuple::matchingRhs,
+          OutputTuple::notMatchingLhs,
+          OutputTuple::notMatchingRhs);
+      for (Function<OutputTuple, List<Call>> calls : accessors) {
+        assertEquals(
+            new HashSet<>(calls.apply(expected.get(0))),
+            actual.stream()
+                .flatMap(tuple -> calls.apply(tuple).stream())
+                .collect(Collectors.toSet()));
+      }
+      // Only the part with the call that doesn't match exactly, and its neighbor, goes unprocessed.
+      WindowEvaluator tooSmall = WindowEvaluator.builder(reference)
+          .setSplitExactMatches(true)
+          .setMaxWindowSize(0)
+          .build();
+      DiffStats stats = tooSmall.partition(lhs, rhs).map(tooSmall).collect(DiffStats.builder());
+      assertEquals(1, stats.unprocessedWindows().size());
+      assertEquals(lhs.subList(0, 2), stats.unprocessedWindows().get(0).lhs());
+      assertEquals(rhs.subList(0, 2), stats.unprocessedWindows().get(0).rhs());
+      assertEquals(2, stats.matchingLhs().size());
+      return null;
+    });
+  }
+
+  @Test
+  public void testSplitExactMatchesInTandemRepeats() {
+    String prefix = WindowSpanTest.PREFIX;
+    FastaReader.FastaFile reference = TestReference.reference(ImmutableMap.of(
+        "chr1", prefix + WindowSpanTest.REPEAT + WindowSpanTest.SUFFIX));
+    Call
+        snp = TestCall.create("chr1", prefix.length() - 1,
+            reference.get("chr1", prefix.length() - 1, prefix.length()),
+            Collections.singletonList("A"), Arrays.asList(0, 1)),
+        lhsDeletion = deletion(reference, prefix.length() + 1),
+        rhsDeletion = deletion(reference, prefix.length() + 80);
+    List<Call> lhs = Arrays.asList(snp, lhsDeletion), rhs = Arrays.asList(snp, rhsDeletion);
+    for (boolean splitExactMatches : new boolean[] { false, true }) {
+      WindowEvaluator evaluator = WindowEvaluator.builder(reference)
+          .setWindowSpan(WindowSpan.TANDEM_REPEAT)
+          .setSplitExactMatches(splitExactMatches)
+          .build();
+      DiffStats stats = evaluator.partition(lhs, rhs).map(evaluator).collect(DiffStats.builder());
+      assertEquals(2, stats.matchingLhs().size());
+      assertEquals(2, stats.matchingRhs().size());
+      assertTrue(stats.notMatchingLhs().isEmpty());
+      assertTrue(stats.notMatchingRhs().isEmpty());
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.berkeley.cs.amplab.calldiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import edu.berkeley.cs.amplab.calldiff.Call;
+import edu.berkeley.cs.amplab.calldiff.FastaReader;
+import edu.berkeley.cs.amplab.calldiff.Window;
+import edu.berkeley.cs.amplab.calldiff.WindowSpan;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Unit test for {@link WindowSpan}
+ */
+public class WindowSpanTest {
+
+  /**
+   * A contig with a tandem repeat of {@code CAG} between two stretches of unrepetitive bases, which
+   * {@link RepeatIndexTest} shares.
+   */
+  static final String
+      PREFIX = "GATCCGTAAGCTTGACCATG",
+      REPEAT = Strings.repeat("CAG", 30),
+      SUFFIX = "TTGCAAGTCCGATACGTAGT";
+
+  private static final FastaReader.FastaFile REFERENCE =
+      TestReference.reference(ImmutableMap.of("chr1", PREFIX + REPEAT + SUFFIX));
+
+  private static Call deletion(int position) {
+    String bases = REFERENCE.get("chr1", position, position + 4);
+    return TestCall.create("chr1", position, bases,
+        Collections.singletonList(bases.substring(0, 1)), Arrays.asList(0, 1));
+  }
+
+  private static List<Integer> partition(WindowSpan windowSpan, List<Call> lhs, List<Call> rhs) {
+    return Window.partition(lhs, rhs, call -> windowSpan.span(REFERENCE, call))
+        .map(window -> window.lhs().size() + window.rhs().size())
+        .collect(Collectors.toList());
+  }
+
+  private static Call snp(int position) {
+    String bases = REFERENCE.get("chr1", position, position + 1);
+    return TestCall.create("chr1", position, bases,
+        Collections.singletonList("A".equals(bases) ? "C" : "A"), Arrays.asList(0, 1));
+  }
+
+  @Test
+  public void testDistance() {
+    Call call = snp(3);
+    assertEquals(Window.distanceSpan(call), WindowSpan.DISTANCE.span(REFERENCE, call));
+    assertEquals(
+        Arrays.asList(3, 1),
+        partition(WindowSpan.DISTANCE,
+            Arrays.asList(snp(3), deletion(PREFIX.length() + 1)),
+            Arrays.asList(snp(12), deletion(PREFIX.length() + 80))));
+  }
+
+  @Test
+  public void testTandemRepeat() {
+    Range<Integer> repeat = Range.closedOpen(PREFIX.length(), PREFIX.length() + REPEAT.length());
+    for (int offset : new int[] { 1, 40, 80 }) {
+      assertTrue(WindowSpan.TANDEM_REPEAT.span(REFERENCE, deletion(PREFIX.length() + offset))
+          .encloses(repeat));
+    }
+    Range<Integer> span = WindowSpan.TANDEM_REPEAT.span(REFERENCE, snp(3));
+    assertTrue(span.contains(3));
+    assertTrue(span.upperEndpoint() - span.lowerEndpoint() < 8);
+    // The SNPs no longer share a window, and the deletions now do, despite being far apart.
+    assertEquals(
+        Arrays.asList(1, 1, 2),
+        partition(WindowSpan.TANDEM_REPEAT,
+            Arrays.asList(snp(3), deletion(PREFIX.length() + 1)),
+            Arrays.asList(snp(12), deletion(PREFIX.length() + 80))));
+  }
+}
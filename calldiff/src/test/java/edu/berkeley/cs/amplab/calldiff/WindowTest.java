@@ -17,6 +17,7 @@
 package edu.berkeley.cs.amplab.calldiff;
 
 import static edu.berkeley.cs.amplab.calldiff.TestCall.randomCalls;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.Iterators;
@@ -28,8 +29,13 @@ import edu.berkeley.cs.amplab.calldiff.Call;
 import edu.berkeley.cs.amplab.calldiff.Window;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -38,6 +44,28 @@ import java.util.stream.Stream;
  */
 public class WindowTest {
 
+  @Test
+  public void testEstimatedCost() {
+    List<Integer> het = Arrays.asList(0, 1), hom = Arrays.asList(1, 1);
+    Call
+        snp1 = TestCall.create("chr1", 10, "A", Collections.singletonList("C"), het),
+        snp2 = TestCall.create("chr1", 20, "A", Collections.singletonList("C"), het),
+        homSnp = TestCall.create("chr1", 20, "A", Collections.singletonList("C"), hom),
+        deletion = TestCall.create("chr1", 9, "AAA", Collections.singletonList("A"), het),
+        phased1 = TestCall.create(
+            "chr1", 10, "A", Collections.singletonList("C"), het, Call.Phaseset.create(1)),
+        phased2 = TestCall.create(
+            "chr1", 20, "A", Collections.singletonList("C"), het, Call.Phaseset.create(1));
+    // 2 * 2 subsets on the left, 2 on the right, and 4 + 2 haplotypes.
+    assertEquals(48, window(list(snp1, snp2), list(snp1)).estimatedCost(), 0);
+    // The homozygous call doubles the subsets but not the haplotypes.
+    assertEquals(32, window(list(snp1, homSnp), list(snp1)).estimatedCost(), 0);
+    // The overlapping deletion only adds half as many subsets.
+    assertEquals(36, window(list(snp1, deletion), list(snp1)).estimatedCost(), 0);
+    // Phased calls only double the haplotypes once.
+    assertEquals(32, window(list(phased1, phased2), list(snp1)).estimatedCost(), 0);
+  }
+
   @Test
   public void testPartition() throws IOException {
     TestReference.reader().read(reference -> {
@@ -90,6 +118,74 @@ public class WindowTest {
     });
   }
 
+  @Test
+  public void testSplitExactMatches() {
+    List<Integer> het = Arrays.asList(0, 1);
+    Call
+        a = TestCall.create("chr1", 100, "A", Collections.singletonList("C"), het),
+        lhsResidual = TestCall.create("chr1", 130, "A", Collections.singletonList("C"), het),
+        rhsResidual = TestCall.create("chr1", 130, "A", Collections.singletonList("G"), het),
+        b = TestCall.create("chr1", 175, "A", Collections.singletonList("C"), het),
+        c = TestCall.create("chr1", 220, "A", Collections.singletonList("C"), het),
+        d = TestCall.create("chr1", 260, "A", Collections.singletonList("C"), het);
+    assertEquals(
+        Arrays.asList(
+            Window.create("chr1", 100, 176, list(a, lhsResidual, b), list(a, rhsResidual, b)),
+            Window.create("chr1", 220, 261, list(c, d), list(c, d))),
+        Window
+            .create("chr1", 100, 261, list(a, lhsResidual, b, c, d), list(a, rhsResidual, b, c, d))
+            .splitExactMatches());
+    for (Window window : Arrays.asList(
+        Window.create("chr1", 100, 261, list(a, b, c, d), list(a, b, c, d)),
+        Window.create("chr1", 130, 131, list(lhsResidual), list(rhsResidual)))) {
+      assertEquals(Collections.singletonList(window), window.splitExactMatches());
+    }
+  }
+
+  @Test
+  public void testSplittablePartition() throws IOException {
+    TestReference.reader().read(reference -> {
+      Random random = new Random();
+      for (int i = 1; i < 40; ++i) {
+        List<Call> lhs = new ArrayList<>(), rhs = new ArrayList<>();
+        for (String contig : new TreeSet<>(reference.contigs())) {
+          int contigLength = reference.contigLength(contig);
+          lhs.addAll(randomCalls(random, contig, contigLength, 5, random.nextInt(i)));
+          rhs.addAll(randomCalls(random, contig, contigLength, 5, random.nextInt(i)));
+        }
+        List<Window> expected = Window.partition(lhs.stream(), rhs.stream())
+            .collect(Collectors.toList());
+        assertEquals(expected, Window.partition(lhs, rhs).collect(Collectors.toList()));
+        assertEquals(expected, Window.partition(lhs, rhs).parallel().collect(Collectors.toList()));
+        List<Window> actual = new ArrayList<>();
+        split(Window.partition(lhs, rhs).spliterator(), actual);
+        assertEquals(expected, actual);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Split the spliterator as far as it will go, and collect the windows from the pieces in order.
+   */
+  private static void split(Spliterator<Window> spliterator, List<Window> windows) {
+    Spliterator<Window> prefix = spliterator.trySplit();
+    if (null != prefix) {
+      split(prefix, windows);
+      split(spliterator, windows);
+    } else {
+      spliterator.forEachRemaining(windows::add);
+    }
+  }
+
+  private static ArrayList<Call> list(Call... calls) {
+    return new ArrayList<>(Arrays.asList(calls));
+  }
+
+  private static Window window(ArrayList<Call> lhs, ArrayList<Call> rhs) {
+    return Window.create("chr1", 0, 100, lhs, rhs);
+  }
+
   private static List<Call> allCalls(Window window) {
     return Stream.concat(window.lhs().stream(), window.rhs().stream())
         .collect(Collectors.toList());